@@ -0,0 +1,35 @@
+package lang;
+
+import lang.semantic.NameGenerator;
+import lang.stats.Stats;
+
+// Names and ids of one compilation. Every compilation has its own session, so programs compiled
+// one after another or side by side in one process are numbered the same as in a fresh process.
+public class CompilerSession {
+
+    private final Stats stats;
+    private int basicBlockCount;
+
+    public CompilerSession() {
+        this(new Stats(false));
+    }
+
+    public CompilerSession(Stats stats) {
+        this.stats = stats;
+        this.basicBlockCount = 0;
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+
+    // Names of the declarations of the file with the given number in the input list.
+    public NameGenerator nameGenerator(int fileNumber) {
+        return new NameGenerator(fileNumber);
+    }
+
+    // Blocks are only created by the thread translating the program.
+    public String nextBlockName(String name) {
+        return name + "_" + basicBlockCount++;
+    }
+}
@@ -1,20 +1,41 @@
 package lang;
 
 import lang.ast.FileNode;
+import lang.ast.Program;
+import lang.build.AnalysedFiles;
+import lang.build.BuildFiles;
+import lang.build.OutputCache;
+import lang.build.Watcher;
+import lang.daemon.CompileClient;
+import lang.daemon.CompileServer;
+import lang.daemon.Secret;
 import lang.ir.Module;
 import lang.ir.translate.Translator;
 import lang.lexer.Lexer;
 import lang.lr.LLVMTranslator;
+import lang.lr.LlvmAssembler;
 import lang.opt.Optimizer;
 import lang.parser.Parser;
 import lang.semantic.SemanticAnalysis;
+import lang.stats.Stats;
 import org.apache.commons.cli.*;
 import org.apache.commons.lang3.SystemUtils;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -27,13 +48,74 @@ public class Main {
     public static final String IR_DOT_GRAPH = "IRDotGraph";
     public static final String OUTPUT = "output";
     public static final String MODE = "mode";
+    public static final String JOBS = "jobs";
+    public static final String VERBOSE = "verbose";
+    public static final String DAEMON = "daemon";
+    public static final String CONNECT = "connect";
+    public static final String WATCH = "watch";
+    public static final String STATS = "stats";
+    public static final String STATS_JSON = "statsJson";
+    public static final String CACHE = "cache";
+    public static final String EMIT = "emit";
+    public static final String SPLIT = "split";
+    public static final String OPTIMIZE = "optimize";
+
+    private static final String MODULES_DIRECTORY = "out.modules";
+    private static final String MODULES_MANIFEST = "modules";
+
+    // Options that leave the output as it is, all others are part of the output cache key.
+    private static final Set<String> NEUTRAL_OPTIONS = Set.of(
+            INPUT, AST_TREE_DEBUG, IR_DEBUG, IR_DOT_GRAPH, OUTPUT, MODE, JOBS, VERBOSE, DAEMON, CONNECT,
+            WATCH, STATS, STATS_JSON, CACHE);
 
     public static void main(String[] args) throws IOException, InterruptedException {
+        Options options = createOptions();
 
+        CommandLineParser cmdParser = new DefaultParser();
+        HelpFormatter formatter = new HelpFormatter();
+        CommandLine cmd = null;
+
+        try {
+            cmd = cmdParser.parse(options, args);
+            if (!cmd.hasOption(DAEMON) && !cmd.hasOption(INPUT)) {
+                throw new MissingOptionException("Missing required option: " + INPUT.charAt(0));
+            }
+        } catch (ParseException e) {
+            System.out.println(e.getMessage());
+            formatter.printHelp("Compiler", options);
+
+            System.exit(1);
+        }
+
+        File workingDirectory = new File("").getAbsoluteFile();
+
+        if (cmd.hasOption(DAEMON)) {
+            new CompileServer(Integer.parseInt(cmd.getOptionValue(DAEMON)), Secret.defaultFile()).serve();
+        } else if (cmd.hasOption(CONNECT)) {
+            System.exit(CompileClient.compile(
+                    Integer.parseInt(cmd.getOptionValue(CONNECT)),
+                    Secret.defaultFile(),
+                    workingDirectory,
+                    withoutOption(args, CONNECT)));
+        } else if (cmd.hasOption(WATCH)) {
+            CommandLine watchCmd = cmd;
+            AnalysedFiles analysedFiles = new AnalysedFiles();
+
+            new Watcher(
+                    resolve(workingDirectory, cmd.getOptionValue(INPUT)).toPath(),
+                    outputFiles(cmd, workingDirectory),
+                    () -> build(watchCmd, workingDirectory, analysedFiles)
+            ).watch();
+        } else {
+            build(cmd, workingDirectory, null);
+        }
+    }
+
+    public static Options createOptions() {
         Options options = new Options();
 
         Option input = new Option("i", INPUT, true, "input file path");
-        input.setRequired(true);
+        input.setRequired(false);
         options.addOption(input);
 
         Option astTreeDebug = new Option("ast", AST_TREE_DEBUG, false, "enable ast tree debug");
@@ -56,47 +138,199 @@ public class Main {
         mode.setRequired(false);
         options.addOption(mode);
 
-        CommandLineParser cmdParser = new DefaultParser();
-        HelpFormatter formatter = new HelpFormatter();
-        CommandLine cmd = null;
+        Option jobs = new Option("j", JOBS, true, "number of files parsed and analysed and functions emitted in parallel");
+        jobs.setRequired(false);
+        options.addOption(jobs);
 
-        try {
-            cmd = cmdParser.parse(options, args);
-        } catch (ParseException e) {
-            System.out.println(e.getMessage());
-            formatter.printHelp("Compiler", options);
+        Option verbose = new Option("v", VERBOSE, false, "print diagnostic output");
+        verbose.setRequired(false);
+        options.addOption(verbose);
 
-            System.exit(1);
-        }
+        Option daemon = new Option("daemon", DAEMON, true, "serve builds of the same user on the given local port");
+        daemon.setRequired(false);
+        options.addOption(daemon);
+
+        Option connect = new Option("c", CONNECT, true, "run the build on the compile server at the given local port");
+        connect.setRequired(false);
+        options.addOption(connect);
+
+        Option watch = new Option("w", WATCH, false, "build again whenever an input file changes");
+        watch.setRequired(false);
+        options.addOption(watch);
 
-        List<FileNode> files = new ArrayList<>();
-        File root = new File(cmd.getOptionValue(INPUT));
+        Option stats = new Option("stats", STATS, false, "print time and memory spent per phase, file and function");
+        stats.setRequired(false);
+        options.addOption(stats);
+
+        Option statsJson = new Option("statsJson", STATS_JSON, true, "write the stats as json to the given file");
+        statsJson.setRequired(false);
+        options.addOption(statsJson);
+
+        Option outputCache = new Option("cache", CACHE, true, "directory of outputs reused by identical builds");
+        outputCache.setRequired(false);
+        options.addOption(outputCache);
+
+        Option emit = new Option("emit", EMIT, true, "output format, ll for textual IR (default) or bc for the IR assembled by llvm-as from the PATH");
+        emit.setRequired(false);
+        options.addOption(emit);
+
+        Option split = new Option("split", SPLIT, false, "emit one module per source file into out.modules");
+        split.setRequired(false);
+        options.addOption(split);
+
+        Option optimize = new Option("O", OPTIMIZE, true, "optimization level from 0 (default) to 3");
+        optimize.setRequired(false);
+        options.addOption(optimize);
+
+        return options;
+    }
+
+    // Relative paths are resolved against the working directory, which is the directory of the
+    // client when the build runs on the compile server. Files analysed by the last build are taken
+    // from analysedFiles when it is given and the build does not print the tree.
+    public static void build(CommandLine cmd, File workingDirectory, AnalysedFiles analysedFiles)
+            throws IOException, InterruptedException {
+        File root = resolve(workingDirectory, cmd.getOptionValue(INPUT));
 
         List<File> raws = getFiles(root);
-        raws.add(new File("lang/lib"));
+        raws.add(resolve(workingDirectory, "lang/lib"));
 
-        for (File childFile : raws) {
-            Reader reader = new FileReader(childFile);
-            Lexer lexer = new Lexer(reader);
+        int jobCount = cmd.hasOption(JOBS)
+                ? Integer.parseInt(cmd.getOptionValue(JOBS))
+                : Runtime.getRuntime().availableProcessors();
 
-            Parser parser = new Parser(lexer, childFile.getAbsolutePath(), childFile.getPath());
-            FileNode fileNode = parser.parse();
-            files.add(fileNode);
+        // With split modules the manifest stands for the output, it changes whenever a module does.
+        File irFile = cmd.hasOption(SPLIT)
+                ? new File(resolve(workingDirectory, MODULES_DIRECTORY), MODULES_MANIFEST)
+                : resolve(workingDirectory, isBitcode(cmd) ? "out.bc" : "out.ll");
 
-            if (cmd.hasOption(AST_TREE_DEBUG)) {
+        if (cmd.hasOption(SPLIT) && cmd.hasOption(CACHE)) {
+            throw new IllegalArgumentException("Split modules are not kept in the output cache");
+        }
+
+        CompilerSession session = new CompilerSession(
+                new Stats(cmd.hasOption(STATS) || cmd.hasOption(STATS_JSON)));
+        Stats stats = session.getStats();
+
+        OutputCache outputCache = cmd.hasOption(CACHE)
+                ? new OutputCache(resolve(workingDirectory, cmd.getOptionValue(CACHE)).toPath())
+                : null;
+        String cacheKey = null;
+        if (outputCache != null) {
+            try (Stats.Span span = stats.phase("cache")) {
+                cacheKey = outputCache.key(root.toPath(), raws, outputOptions(cmd));
+            }
+        }
+
+        if (outputCache != null
+                && !cmd.hasOption(AST_TREE_DEBUG)
+                && !cmd.hasOption(IR_DEBUG)
+                && !cmd.hasOption(IR_DOT_GRAPH)
+                && outputCache.restore(cacheKey, irFile.getName(), irFile.toPath())) {
+            System.out.println(irFile + " is restored from the cache");
+        } else {
+            translate(cmd, workingDirectory, root, raws, jobCount, irFile,
+                    cmd.hasOption(AST_TREE_DEBUG) ? null : analysedFiles, session);
+
+            if (outputCache != null) {
+                outputCache.store(cacheKey, irFile.getName(), irFile.toPath());
+            }
+        }
+
+        File binaryFile = resolve(workingDirectory, "out.o");
+        File executableFile = resolve(workingDirectory, cmd.hasOption(OUTPUT) ? cmd.getOptionValue(OUTPUT) : "program");
+//
+//         if (outputCache == null
+//                 || !outputCache.restore(cacheKey, binaryFile.getName(), binaryFile.toPath())
+//                 || !outputCache.restore(cacheKey, executableFile.getName(), executableFile.toPath())) {
+//             buildLibrary(stats, jobCount);
+//
+//             if (cmd.hasOption(SPLIT)) {
+//                 runClang(runLLVMModules(irFile, stats, jobCount), executableFile, stats);
+//             } else {
+//                 runLLVM(irFile, stats);
+//                 runClang(List.of(binaryFile), executableFile, stats);
+//             }
+//
+//             if (outputCache != null) {
+//                 outputCache.store(cacheKey, binaryFile.getName(), binaryFile.toPath());
+//                 outputCache.store(cacheKey, executableFile.getName(), executableFile.toPath());
+//             }
+//         }
+//
+//         if (!cmd.hasOption(MODE)
+//                 || cmd.getOptionValue(MODE) == null
+//                 || cmd.getOptionValue(MODE).equals("buildAndRun")) {
+//             runProgram(executableFile);
+//         } else if (cmd.hasOption(MODE) &&
+//                 Optional.ofNullable(cmd.getOptionValue(MODE)).orElse("buildAndRun").equals("valgrindDebug")) {
+//             runWithValgrind(executableFile);
+//         }
+
+        if (cmd.hasOption(STATS)) {
+            System.out.print(stats.report());
+        }
+        if (cmd.hasOption(STATS_JSON)) {
+            BuildFiles.write(resolve(workingDirectory, cmd.getOptionValue(STATS_JSON)).toPath(), stats.toJson());
+        }
+    }
+
+    // Runs the compiler from the sources to out.ll or out.bc.
+    private static void translate(CommandLine cmd,
+                                  File workingDirectory,
+                                  File root,
+                                  List<File> raws,
+                                  int jobCount,
+                                  File irFile,
+                                  AnalysedFiles analysedFiles,
+                                  CompilerSession session) throws IOException, InterruptedException {
+        Stats stats = session.getStats();
+
+        if (analysedFiles != null) {
+            analysedFiles.update(raws);
+            if (cmd.hasOption(VERBOSE)) {
+                System.out.println("Analysed again: " + analysedFiles.getAffectedFiles());
+            }
+        }
+
+        List<FileNode> files;
+        try (Stats.Span span = stats.phase("parse")) {
+            files = parseFiles(raws, jobCount, analysedFiles, stats);
+        }
+
+        if (cmd.hasOption(AST_TREE_DEBUG)) {
+            for (FileNode fileNode : files) {
                 System.out.println(fileNode.astDebug(0));
             }
         }
 
         SemanticAnalysis semanticAnalysis = new SemanticAnalysis(
+                session,
                 root.getPath(),
-                files);
+                files,
+                cmd.hasOption(VERBOSE),
+                jobCount,
+                analysedFiles != null ? analysedFiles.getAnalysis() : null);
+
+        Program program;
+        try (Stats.Span span = stats.phase("semantic")) {
+            program = semanticAnalysis.analyse();
+        }
 
-        Translator translator = new Translator(semanticAnalysis.analyse());
-        Module module = translator.translate();
+        if (analysedFiles != null) {
+            analysedFiles.save(files, semanticAnalysis);
+        }
+
+        Module module;
+        try (Stats.Span span = stats.phase("translate")) {
+            Translator translator = new Translator(session, program);
+            module = translator.translate();
+        }
 
-        Optimizer optimizer = new Optimizer(module);
-        optimizer.optimize();
+        try (Stats.Span span = stats.phase("optimize")) {
+            Optimizer optimizer = new Optimizer(module, optimizationLevel(cmd), stats);
+            optimizer.optimize();
+        }
 
         if (cmd.hasOption(IR_DOT_GRAPH)) {
             String picturePath = Optional.ofNullable(cmd.getOptionValue(IR_DOT_GRAPH)).orElse("ir.dot.dump");
@@ -108,44 +342,84 @@ public class Main {
                             .map(f -> Translator.graphVizDebug(f, clusterId.getAndIncrement()))
                             .collect(Collectors.joining("\n")) + "\n}";
 
-            File dotFile = new File(picturePath);
+            File dotFile = resolve(workingDirectory, picturePath);
             FileWriter fileWriter = new FileWriter(dotFile);
 
             fileWriter.write(digraphDebug);
             fileWriter.flush();
 
-            runGraphViz(dotFile);
+            runGraphViz(dotFile, stats);
         }
 
-        LLVMTranslator llvmTranslator = new LLVMTranslator(module);
+        try (Stats.Span span = stats.phase("llvm")) {
+            LLVMTranslator llvmTranslator = new LLVMTranslator(session, module, jobCount);
 
-        String dump = llvmTranslator.translate();
+            BuildFiles.Content content = llvmTranslator::translate;
+            if (cmd.hasOption(IR_DEBUG)) {
+                String dump = llvmTranslator.translate();
+                System.out.println(dump);
+                content = (writer) -> writer.write(dump);
+            }
 
-        if (cmd.hasOption(IR_DEBUG)) {
-            System.out.println(dump);
+            if (cmd.hasOption(SPLIT)) {
+                writeModules(llvmTranslator, session, module, irFile, isBitcode(cmd), jobCount);
+            } else if (isBitcode(cmd)) {
+                LlvmAssembler.assemble(irFile.toPath(), content);
+            } else {
+                BuildFiles.write(irFile.toPath(), content);
+            }
         }
+    }
 
-        File llFile = new File("out.ll");
-        File binaryFile = new File("out.o");
-        File executableFile = new File(cmd.hasOption(OUTPUT) ? cmd.getOptionValue(OUTPUT) : "program");
+    // Every module is written on its own, in parallel, next to the manifest. The manifest lists the
+    // hash and the name of each module in link order; modules of an earlier build that are not
+    // listed any more are removed.
+    private static void writeModules(LLVMTranslator llvmTranslator,
+                                     CompilerSession session,
+                                     Module module,
+                                     File manifest,
+                                     boolean bitcode,
+                                     int jobCount) throws IOException, InterruptedException {
+        File directory = manifest.getParentFile();
+        Files.createDirectories(directory.toPath());
+
+        Map<String, Set<lang.ir.Function>> modules = llvmTranslator.splitModules();
+        LLVMTranslator moduleTranslator = new LLVMTranslator(session, module);
 
-        FileWriter fileWriter = new FileWriter(llFile);
-        fileWriter.write(dump);
-        fileWriter.flush();
-//
-//         buildLibrary();
-//
-//         runLLVM(llFile);
-//         runClang(binaryFile, executableFile);
-//
-//         if (!cmd.hasOption(MODE)
-//                 || cmd.getOptionValue(MODE) == null
-//                 || cmd.getOptionValue(MODE).equals("buildAndRun")) {
-//             runProgram(executableFile);
-//         } else if (cmd.hasOption(MODE) &&
-//                 Optional.ofNullable(cmd.getOptionValue(MODE)).orElse("buildAndRun").equals("valgrindDebug")) {
-//             runWithValgrind(executableFile);
-//         }
+        List<File> files = new ArrayList<>();
+        List<Callable<Void>> writes = new ArrayList<>();
+        for (Map.Entry<String, Set<lang.ir.Function>> entry : modules.entrySet()) {
+            File file = new File(directory, entry.getKey() + (bitcode ? ".bc" : ".ll"));
+            boolean definesGlobals = entry.getKey().equals(LLVMTranslator.RUNTIME_MODULE);
+            BuildFiles.Content content = (writer) ->
+                    moduleTranslator.translate(writer, entry.getKey(), entry.getValue(), definesGlobals);
+
+            files.add(file);
+            writes.add(() -> {
+                if (bitcode) {
+                    LlvmAssembler.assemble(file.toPath(), content);
+                } else {
+                    BuildFiles.write(file.toPath(), content);
+                }
+                return null;
+            });
+        }
+        runAll(writes, jobCount);
+
+        StringBuilder lines = new StringBuilder();
+        for (File file : files) {
+            lines.append(BuildFiles.hash(file.toPath())).append(" ").append(file.getName()).append("\n");
+        }
+
+        Set<String> names = files.stream().map(File::getName).collect(Collectors.toSet());
+        for (File file : sortedFiles(directory)) {
+            String name = file.getName();
+            if ((name.endsWith(".ll") || name.endsWith(".bc")) && !names.contains(name)) {
+                Files.delete(file.toPath());
+            }
+        }
+
+        BuildFiles.write(manifest.toPath(), lines.toString());
     }
 
     private static void createAndWrite(String path, String content) throws IOException {
@@ -156,6 +430,123 @@ public class Main {
         fileWriter.flush();
     }
 
+    // Every file has its own lexer and parser, so files are parsed independently. The result keeps the
+    // order of the input list whatever order the files finish in.
+    private static List<FileNode> parseFiles(List<File> raws,
+                                             int jobCount,
+                                             AnalysedFiles analysedFiles,
+                                             Stats stats) throws IOException, InterruptedException {
+        AnalysedFiles.FileParser parser = analysedFiles != null
+                ? (file) -> analysedFiles.parse(file, Main::parseFile)
+                : Main::parseFile;
+
+        if (jobCount < 1) {
+            throw new IllegalArgumentException("Wrong jobs count " + jobCount);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(jobCount, Math.max(raws.size(), 1)));
+
+        try {
+            List<Future<FileNode>> futures = new ArrayList<>();
+            for (File childFile : raws) {
+                futures.add(executor.submit(() -> {
+                    try (Stats.Span span = stats.file("parse", childFile.getPath())) {
+                        return parser.parse(childFile);
+                    }
+                }));
+            }
+
+            List<FileNode> files = new ArrayList<>();
+            for (Future<FileNode> future : futures) {
+                try {
+                    files.add(future.get());
+                } catch (ExecutionException executionException) {
+                    Throwable cause = executionException.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+            return files;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static FileNode parseFile(File childFile) throws IOException {
+        int lastQuote;
+        try (Reader reader = new FileReader(childFile)) {
+            lastQuote = Lexer.lastQuote(reader);
+        }
+
+        try (Reader reader = new FileReader(childFile)) {
+            Lexer lexer = new Lexer(reader, lastQuote);
+
+            Parser parser = new Parser(lexer, childFile.getAbsolutePath(), childFile.getPath());
+            return parser.parse();
+        }
+    }
+
+    private static int optimizationLevel(CommandLine cmd) {
+        String level = Optional.ofNullable(cmd.getOptionValue(OPTIMIZE)).orElse("0");
+        if (!level.matches("[0-3]")) {
+            throw new IllegalArgumentException("Wrong optimization level " + level);
+        }
+        return Integer.parseInt(level);
+    }
+
+    private static boolean isBitcode(CommandLine cmd) {
+        String format = Optional.ofNullable(cmd.getOptionValue(EMIT)).orElse("ll");
+        if (!format.equals("ll") && !format.equals("bc")) {
+            throw new IllegalArgumentException("Wrong output format " + format);
+        }
+        return format.equals("bc");
+    }
+
+    private static List<String> outputOptions(CommandLine cmd) {
+        return Stream.of(cmd.getOptions())
+                .filter(option -> !NEUTRAL_OPTIONS.contains(option.getLongOpt()))
+                .map(option -> option.getLongOpt() + "=" + option.getValuesList())
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    // Files written by a build, a watched build does not start again because of them.
+    private static Set<Path> outputFiles(CommandLine cmd, File workingDirectory) {
+        return Stream.of(
+                        "out.ll",
+                        "out.bc",
+                        "out.o",
+                        MODULES_DIRECTORY,
+                        cmd.hasOption(OUTPUT) ? cmd.getOptionValue(OUTPUT) : "program",
+                        Optional.ofNullable(cmd.getOptionValue(IR_DOT_GRAPH)).orElse("ir.dot.dump"),
+                        "IRGraph.png")
+                .map(path -> resolve(workingDirectory, path).toPath().toAbsolutePath().normalize())
+                .collect(Collectors.toSet());
+    }
+
+    private static File resolve(File workingDirectory, String path) {
+        File file = new File(path);
+        return file.isAbsolute() ? file : new File(workingDirectory, path);
+    }
+
+    private static String[] withoutOption(String[] args, String option) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-c") || args[i].equals("--" + option)) {
+                i++;
+            } else if (!args[i].startsWith("--" + option + "=")) {
+                result.add(args[i]);
+            }
+        }
+        return result.toArray(String[]::new);
+    }
+
     private static List<File> getFiles(File root) {
         List<File> files = new ArrayList<>();
 
@@ -172,65 +563,226 @@ public class Main {
         return files;
     }
 
-    private static void buildLibrary() throws IOException, InterruptedException {
-
-        if (new File("./build").exists()) {
-            ProcessBuilder deleteBuilder = new ProcessBuilder("rm", "-rf", "build");
-            runProcess(deleteBuilder);
+    // Objects stay in ./build next to the hash of what they were compiled from: the source, every
+    // header and the flags. Only objects whose hash changed are compiled again, in parallel, and
+    // lib.a is archived again only when one of them was.
+    private static void buildLibrary(Stats stats, int jobCount) throws IOException, InterruptedException {
+        File buildDirectory = new File("./build");
+        Files.createDirectories(buildDirectory.toPath());
+
+        List<String> flags = List.of(
+                "-O3",
+                "-c",
+                "-pthread",
+                "-Wall",
+                "-I",
+                "./include",
+                SystemUtils.IS_OS_LINUX ? "-D IS_LINUX" : "");
+
+        List<String> headerHashes = new ArrayList<>();
+        for (File header : sortedFiles(new File("./include"))) {
+            headerHashes.add(header.getPath());
+            headerHashes.add(BuildFiles.hash(header.toPath()));
         }
+        String headers = BuildFiles.hash(headerHashes.toArray(String[]::new));
 
-        ProcessBuilder mkdirBuilder = new ProcessBuilder("mkdir", "build");
-        runProcess(mkdirBuilder);
-        List<File> sources =
-                getFiles(new File("./lib"));
         List<String> outputs = new ArrayList<>();
-        for (File file : sources) {
-            String output = "./build/" + file.getName().replaceAll("\\.c|\\.S", ".o");
-            outputs.add(output);
-            String[] params =
-                    Stream.of(
-                                    "gcc",
-                                    "-O3",
-                                    "-c",
-                                    "-pthread",
-                                    "-Wall",
-                                    "-I",
-                                    "./include",
-                                    SystemUtils.IS_OS_LINUX ? "-D IS_LINUX" : "",
-                                    "-o",
-                                    output,
-                                    file.getPath())
-                            .toArray(String[]::new);
-            ProcessBuilder procBuilder = new ProcessBuilder(params);
-            runProcess(procBuilder);
+        List<String> hashes = new ArrayList<>();
+        List<Callable<Void>> compilations = new ArrayList<>();
+
+        for (File file : sortedFiles(new File("./lib"))) {
+            if (!file.getName().endsWith(".c") && !file.getName().endsWith(".S")) {
+                continue;
+            }
+
+            File output = new File(buildDirectory, file.getName().replaceAll("\\.c|\\.S", ".o"));
+            File hashFile = new File(output.getPath() + ".hash");
+            String hash = BuildFiles.hash(String.join(" ", flags), headers, BuildFiles.hash(file.toPath()));
+
+            outputs.add(output.getPath());
+            hashes.add(hash);
+
+            if (output.exists() && hashFile.exists() && readString(hashFile).equals(hash)) {
+                continue;
+            }
+
+            compilations.add(() -> {
+                File compiled = new File(output.getPath() + ".tmp");
+                String[] params = Stream.of(
+                                Stream.of("gcc"),
+                                flags.stream(),
+                                Stream.of("-o", compiled.getPath(), file.getPath()))
+                        .flatMap(s -> s)
+                        .toArray(String[]::new);
+
+                try (Stats.Span span = stats.file("external runtime", file.getPath())) {
+                    runProcess(new ProcessBuilder(params));
+                }
+
+                if (!compiled.exists()) {
+                    throw new IOException("Cannot compile " + file);
+                }
+                Files.move(compiled.toPath(), output.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                BuildFiles.write(hashFile.toPath(), hash);
+                return null;
+            });
+        }
+
+        File archive = new File("lib.a");
+        File archiveHashFile = new File(buildDirectory, archive.getName() + ".hash");
+        String archiveHash = BuildFiles.hash(hashes.toArray(String[]::new));
+
+        if (compilations.isEmpty()
+                && archive.exists()
+                && archiveHashFile.exists()
+                && readString(archiveHashFile).equals(archiveHash)) {
+            return;
+        }
+
+        try (Stats.Span span = stats.phase("external runtime")) {
+            runAll(compilations, jobCount);
         }
 
+        // ar only adds and replaces members, so the archive is made anew for removed sources to go.
+        File archived = new File(archive.getPath() + ".tmp");
+        Files.deleteIfExists(archived.toPath());
+
         String[] llvmParams = Stream.concat(Stream.of(
                         "ar",
                         "rcs",
-                        "lib.a"),
+                        archived.getPath()),
                 outputs.stream()).toArray(String[]::new);
         ProcessBuilder llvmProcBuilder = new ProcessBuilder(llvmParams);
-        runProcess(llvmProcBuilder);
+        runTool(llvmProcBuilder, stats);
+
+        if (!archived.exists()) {
+            throw new IOException("Cannot archive " + archive);
+        }
+        Files.move(archived.toPath(), archive.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        BuildFiles.write(archiveHashFile.toPath(), archiveHash);
+    }
+
+    private static void runAll(List<Callable<Void>> tasks, int jobCount) throws IOException, InterruptedException {
+        if (tasks.isEmpty()) {
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(jobCount, tasks.size()));
+
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                try {
+                    future.get();
+                } catch (ExecutionException executionException) {
+                    Throwable cause = executionException.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<File> sortedFiles(File root) {
+        return getFiles(root).stream()
+                .filter(File::isFile)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private static String readString(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
     }
 
-    private static void runGraphViz(File file) throws IOException, InterruptedException {
+    private static void runGraphViz(File file, Stats stats) throws IOException, InterruptedException {
         ProcessBuilder procBuilder = new ProcessBuilder("dot", "-Tpng", file.getName(), "-o", "IRGraph.png");
-        runProcess(procBuilder);
+        procBuilder.directory(file.getAbsoluteFile().getParentFile());
+        runTool(procBuilder, stats);
     }
 
-    private static void runClang(File bf, File prog) throws IOException, InterruptedException {
-        ProcessBuilder procBuilder = new ProcessBuilder("gcc",
-                bf.getName(), "lib.a",
-                SystemUtils.IS_OS_LINUX ? "-lpthread" : "",
-                SystemUtils.IS_OS_LINUX ? "-D IS_LINUX" : "",
-                "-o", prog.getName());
-        runProcess(procBuilder);
+    // Links next to the executable and moves the result over it, so a running watch never leaves a
+    // half written program behind.
+    private static void runClang(List<File> objects, File prog, Stats stats) throws IOException, InterruptedException {
+        File linked = new File(prog.getName() + ".tmp");
+        String[] params = Stream.of(
+                        Stream.of("gcc"),
+                        objects.stream().map(File::getPath),
+                        Stream.of("lib.a",
+                                SystemUtils.IS_OS_LINUX ? "-lpthread" : "",
+                                SystemUtils.IS_OS_LINUX ? "-D IS_LINUX" : "",
+                                "-o", linked.getName()))
+                .flatMap(s -> s)
+                .toArray(String[]::new);
+        ProcessBuilder procBuilder = new ProcessBuilder(params);
+        runTool(procBuilder, stats);
+
+        if (linked.exists()) {
+            Files.move(linked.toPath(), new File(prog.getName()).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
     }
 
-    private static void runLLVM(File file) throws IOException, InterruptedException {
+    // Compiles the modules of the manifest in parallel. An object is kept next to the hash of the module
+    // it was compiled from, so only modules whose text changed go through llc again.
+    private static List<File> runLLVMModules(File manifest, Stats stats, int jobCount)
+            throws IOException, InterruptedException {
+        File directory = manifest.getParentFile();
+
+        List<File> objects = new ArrayList<>();
+        List<Callable<Void>> compilations = new ArrayList<>();
+
+        for (String line : Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8)) {
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            String hash = line.substring(0, line.indexOf(' '));
+            File file = new File(directory, line.substring(line.indexOf(' ') + 1));
+            File object = new File(directory, file.getName().replaceAll("\\.ll$|\\.bc$", ".o"));
+            File hashFile = new File(object.getPath() + ".hash");
+
+            objects.add(object);
+
+            if (object.exists() && hashFile.exists() && readString(hashFile).equals(hash)) {
+                continue;
+            }
+
+            compilations.add(() -> {
+                File compiled = new File(object.getPath() + ".tmp");
+                try (Stats.Span span = stats.file("external llc", file.getPath())) {
+                    runProcess(new ProcessBuilder("llc", "-filetype=obj", "--relocation-model=pic",
+                            file.getPath(), "-o", compiled.getPath()));
+                }
+
+                if (!compiled.exists()) {
+                    throw new IOException("Cannot compile " + file);
+                }
+                Files.move(compiled.toPath(), object.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                BuildFiles.write(hashFile.toPath(), hash);
+                return null;
+            });
+        }
+
+        try (Stats.Span span = stats.phase("external llc")) {
+            runAll(compilations, jobCount);
+        }
+
+        return objects;
+    }
+
+    private static void runLLVM(File file, Stats stats) throws IOException, InterruptedException {
         ProcessBuilder procBuilder = new ProcessBuilder("llc", "-filetype=obj", "--relocation-model=pic",file.getName());
-        runProcess(procBuilder);
+        runTool(procBuilder, stats);
     }
 
     private static void runProgram(File prog) throws IOException, InterruptedException {
@@ -243,6 +795,13 @@ public class Main {
         runProcess(procBuilder);
     }
 
+    // Tools run in a process of their own, only their wall time is measured.
+    private static void runTool(ProcessBuilder procBuilder, Stats stats) throws IOException, InterruptedException {
+        try (Stats.Span span = stats.phase("external " + procBuilder.command().get(0))) {
+            runProcess(procBuilder);
+        }
+    }
+
     private static void runProcess(ProcessBuilder procBuilder) throws IOException, InterruptedException {
         procBuilder.redirectErrorStream(true);
 
@@ -0,0 +1,94 @@
+package lang.build;
+
+import lang.ast.FileNode;
+import lang.semantic.SemanticAnalysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Files of the last build kept in memory by watch mode and the compile server, as semantic analysis
+// left them. A file is taken again when neither its content nor the content of a file it imports,
+// directly or through other files, changed; the other files are parsed and analysed again. Files
+// are numbered by their place in the input, so a build of other files or of another order starts
+// over.
+//
+// Translation and emission still see the whole program: struct ids, literals and block labels are
+// numbered across all files of one module.
+public class AnalysedFiles {
+
+    public interface FileParser {
+        FileNode parse(File file) throws IOException;
+    }
+
+    private DependencyGraph graph;
+    private List<String> paths;
+    private Map<String, FileNode> files;
+    private SemanticAnalysis analysis;
+
+    private Map<String, String> hashes;
+    private Set<String> affected;
+
+    public AnalysedFiles() {
+        this.graph = new DependencyGraph();
+        this.paths = List.of();
+        this.files = Map.of();
+        this.hashes = Map.of();
+        this.affected = Set.of();
+    }
+
+    // Hashes the sources of the next build and decides which of them are analysed again.
+    public void update(List<File> raws) throws IOException {
+        hashes = new LinkedHashMap<>();
+        for (File raw : raws) {
+            hashes.put(raw.getAbsolutePath(), BuildFiles.hash(raw.toPath()));
+        }
+
+        affected = analysis != null && paths.equals(new ArrayList<>(hashes.keySet()))
+                ? graph.affected(hashes)
+                : hashes.keySet();
+    }
+
+    public Set<String> getAffectedFiles() {
+        return affected;
+    }
+
+    // Called from the parsing threads.
+    public FileNode parse(File raw, FileParser parser) throws IOException {
+        String path = raw.getAbsolutePath();
+        return affected.contains(path) ? parser.parse(raw) : files.get(path);
+    }
+
+    // The analysis of the last build, files not parsed again are taken from it.
+    public SemanticAnalysis getAnalysis() {
+        return analysis;
+    }
+
+    // Keeps the files of a build once its analysis is done. A build that fails before leaves the
+    // last one in place, analysing a file changes none of the others.
+    public void save(List<FileNode> fileNodes, SemanticAnalysis analysis) {
+        DependencyGraph graph = new DependencyGraph();
+        List<String> paths = new ArrayList<>();
+        Map<String, FileNode> files = new HashMap<>();
+
+        Map<FileNode, List<FileNode>> imports = analysis.getImportedFiles();
+        for (FileNode fileNode : fileNodes) {
+            graph.addFile(fileNode.getPath(), hashes.get(fileNode.getPath()));
+            for (FileNode imported : imports.getOrDefault(fileNode, List.of())) {
+                graph.addImport(fileNode.getPath(), imported.getPath());
+            }
+            paths.add(fileNode.getPath());
+            files.put(fileNode.getPath(), fileNode);
+        }
+
+        this.graph = graph;
+        this.paths = paths;
+        this.files = files;
+        this.analysis = analysis;
+    }
+}
@@ -0,0 +1,162 @@
+package lang.build;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import lang.Main;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.SecureRandom;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class BuildFiles {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static String compilerHash;
+
+    private BuildFiles() {
+    }
+
+    public static String hash(Path path) throws IOException {
+        return com.google.common.io.Files.asByteSource(path.toFile()).hash(Hashing.sha256()).toString();
+    }
+
+    public static String hash(byte[] content) {
+        return Hashing.sha256().hashBytes(content).toString();
+    }
+
+    public static String hash(String... parts) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (String part : parts) {
+            hasher.putString(part, StandardCharsets.UTF_8);
+            hasher.putByte((byte) 0);
+        }
+        return hasher.hash().toString();
+    }
+
+    // Hash of the compiler classes, so that anything cached by an older compiler is not reused.
+    public static synchronized String compilerHash() throws IOException {
+        if (compilerHash == null) {
+            Path location;
+            try {
+                location = Paths.get(Main.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            } catch (URISyntaxException uriSyntaxException) {
+                throw new IOException(uriSyntaxException);
+            }
+
+            Hasher hasher = Hashing.sha256().newHasher();
+            if (Files.isDirectory(location)) {
+                List<Path> classes;
+                try (Stream<Path> stream = Files.walk(location)) {
+                    classes = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+                }
+                for (Path file : classes) {
+                    hasher.putString(location.relativize(file).toString(), StandardCharsets.UTF_8);
+                    hasher.putBytes(Files.readAllBytes(file));
+                }
+            } else {
+                hasher.putBytes(Files.readAllBytes(location));
+            }
+            compilerHash = hasher.hash().toString();
+        }
+        return compilerHash;
+    }
+
+    public interface Content {
+        void writeTo(Writer writer) throws IOException;
+    }
+
+    // Writes next to the target first and moves the file over it, so readers never see a partly
+    // written file.
+    public static void write(Path path, Content content) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+
+        Path temp = createTemp(path);
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                content.writeTo(writer);
+            }
+            replace(temp, path);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public static void write(Path path, byte[] content) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+
+        Path temp = createTemp(path);
+        try {
+            Files.write(temp, content);
+            replace(temp, path);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public static void write(Path path, String content) throws IOException {
+        write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // An empty file next to the given one. Files.createTempFile makes files only the owner can
+    // read; this one gets the permissions of any new file, as the umask leaves them.
+    public static Path createTemp(Path path) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        while (true) {
+            Path temp = directory.resolve(path.getFileName() + "." + Long.toUnsignedString(RANDOM.nextLong()) + ".tmp");
+            try {
+                return Files.createFile(temp);
+            } catch (FileAlreadyExistsException fileAlreadyExistsException) {
+                // Another writer took the name, try the next one.
+            }
+        }
+    }
+
+    // Moves the written file over the target, keeping the permissions the target had.
+    public static void replace(Path temp, Path path) throws IOException {
+        if (Files.exists(path) && isPosix()) {
+            Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(path));
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Lets everybody who can read the file run it, as chmod +x does.
+    public static void setExecutable(Path path) throws IOException {
+        if (!isPosix()) {
+            path.toFile().setExecutable(true);
+            return;
+        }
+
+        Set<PosixFilePermission> permissions = EnumSet.copyOf(Files.getPosixFilePermissions(path));
+        if (permissions.contains(PosixFilePermission.OWNER_READ)) {
+            permissions.add(PosixFilePermission.OWNER_EXECUTE);
+        }
+        if (permissions.contains(PosixFilePermission.GROUP_READ)) {
+            permissions.add(PosixFilePermission.GROUP_EXECUTE);
+        }
+        if (permissions.contains(PosixFilePermission.OTHERS_READ)) {
+            permissions.add(PosixFilePermission.OTHERS_EXECUTE);
+        }
+        Files.setPosixFilePermissions(path, permissions);
+    }
+
+    private static boolean isPosix() {
+        return FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+    }
+}
@@ -0,0 +1,79 @@
+package lang.build;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Source files of a build with the hash of their content and the files they import.
+public class DependencyGraph {
+
+    private final Map<String, String> hashes;
+    private final Map<String, List<String>> imports;
+
+    public DependencyGraph() {
+        this.hashes = new LinkedHashMap<>();
+        this.imports = new LinkedHashMap<>();
+    }
+
+    public void addFile(String path, String hash) {
+        hashes.put(path, hash);
+        imports.computeIfAbsent(path, (k) -> new ArrayList<>());
+    }
+
+    public void addImport(String path, String imported) {
+        imports.computeIfAbsent(path, (k) -> new ArrayList<>()).add(imported);
+    }
+
+    public Set<String> getFiles() {
+        return hashes.keySet();
+    }
+
+    public String getHash(String path) {
+        return hashes.get(path);
+    }
+
+    public List<String> getImports(String path) {
+        return imports.getOrDefault(path, List.of());
+    }
+
+    // Files whose content differs from this graph, files added or removed since, and every file
+    // importing one of them directly or through other files.
+    public Set<String> affected(Map<String, String> currentHashes) {
+        Set<String> affected = new LinkedHashSet<>();
+
+        for (Map.Entry<String, String> file : currentHashes.entrySet()) {
+            if (!file.getValue().equals(hashes.get(file.getKey()))) {
+                affected.add(file.getKey());
+            }
+        }
+        for (String path : hashes.keySet()) {
+            if (!currentHashes.containsKey(path)) {
+                affected.add(path);
+            }
+        }
+
+        Map<String, List<String>> importers = new HashMap<>();
+        for (Map.Entry<String, List<String>> file : imports.entrySet()) {
+            for (String imported : file.getValue()) {
+                importers.computeIfAbsent(imported, (k) -> new ArrayList<>()).add(file.getKey());
+            }
+        }
+
+        Deque<String> queue = new ArrayDeque<>(affected);
+        while (!queue.isEmpty()) {
+            for (String importer : importers.getOrDefault(queue.poll(), List.of())) {
+                if (affected.add(importer)) {
+                    queue.add(importer);
+                }
+            }
+        }
+
+        return affected;
+    }
+}
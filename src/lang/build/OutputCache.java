@@ -0,0 +1,61 @@
+package lang.build;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Outputs of earlier builds stored under a key made of the compiler, the options that change the
+// output and every source with its place in the input. Sources are named relative to the input
+// root, so the same sources checked out in another directory hit the same entry.
+//
+// Entries are never removed; the cache directory can be deleted at any time.
+public class OutputCache {
+
+    private final Path directory;
+
+    public OutputCache(Path directory) {
+        this.directory = directory;
+    }
+
+    // Files keep their order, which decides how their declarations are numbered.
+    public String key(Path root, List<File> sources, List<String> options) throws IOException {
+        List<String> parts = new ArrayList<>();
+        parts.add(BuildFiles.compilerHash());
+        parts.addAll(options);
+
+        Path base = Files.isDirectory(root) ? root.toAbsolutePath() : root.toAbsolutePath().getParent();
+        for (File source : sources) {
+            Path path = source.toPath().toAbsolutePath();
+            parts.add(path.startsWith(base) ? base.relativize(path).toString() : source.getName());
+            parts.add(BuildFiles.hash(path));
+        }
+
+        return BuildFiles.hash(parts.toArray(String[]::new));
+    }
+
+    // Copies the output of the entry to the target and tells whether there was one.
+    public boolean restore(String key, String name, Path target) throws IOException {
+        Path cached = directory.resolve(key).resolve(name);
+        if (!Files.isRegularFile(cached)) {
+            return false;
+        }
+
+        BuildFiles.write(target, Files.readAllBytes(cached));
+        if (Files.isExecutable(cached)) {
+            BuildFiles.setExecutable(target);
+        }
+        return true;
+    }
+
+    public void store(String key, String name, Path output) throws IOException {
+        Path cached = directory.resolve(key).resolve(name);
+
+        BuildFiles.write(cached, Files.readAllBytes(output));
+        if (Files.isExecutable(output)) {
+            BuildFiles.setExecutable(cached);
+        }
+    }
+}
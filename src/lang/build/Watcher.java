@@ -0,0 +1,124 @@
+package lang.build;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Runs a build and again whenever a file under the root changes. Editors save in bursts (temp file,
+// rename, attributes), so a build starts once no change has been seen for a short while. Files the
+// build writes itself are ignored, otherwise every build would start the next one.
+public class Watcher {
+
+    public interface Build {
+        void run() throws IOException, InterruptedException;
+    }
+
+    private static final long QUIET_MILLIS = 100;
+
+    private final Path root;
+    private final Set<Path> outputs;
+    private final Build build;
+    private final Map<WatchKey, Path> directories;
+
+    public Watcher(Path root, Set<Path> outputs, Build build) {
+        this.root = root.toAbsolutePath().normalize();
+        this.outputs = outputs;
+        this.build = build;
+        this.directories = new HashMap<>();
+    }
+
+    public void watch() throws IOException, InterruptedException {
+        try (WatchService service = root.getFileSystem().newWatchService()) {
+            register(service, Files.isDirectory(root) ? root : root.getParent());
+
+            runBuild();
+
+            while (true) {
+                WatchKey key = service.take();
+                boolean changed = false;
+
+                while (key != null) {
+                    changed |= handle(service, key);
+                    key = service.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+                }
+
+                if (changed) {
+                    runBuild();
+                }
+            }
+        } catch (ClosedWatchServiceException closedWatchServiceException) {
+            // Stopped from outside.
+        }
+    }
+
+    private boolean handle(WatchService service, WatchKey key) throws IOException {
+        Path directory = directories.get(key);
+        boolean changed = false;
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changed = true;
+                continue;
+            }
+
+            Path path = directory.resolve((Path) event.context()).normalize();
+
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                register(service, path);
+            }
+
+            changed |= isSource(path);
+        }
+
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+
+        return changed;
+    }
+
+    private boolean isSource(Path path) {
+        if (outputs.stream().anyMatch(path::startsWith) || path.getFileName().toString().endsWith(".tmp")) {
+            return false;
+        }
+        return Files.isDirectory(root) ? path.startsWith(root) : path.equals(root);
+    }
+
+    private void register(WatchService service, Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes)
+                    throws IOException {
+                directories.put(directory.register(service,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY), directory);
+                return Files.isDirectory(root) ? FileVisitResult.CONTINUE : FileVisitResult.SKIP_SUBTREE;
+            }
+        });
+    }
+
+    // A failed build is reported and the next change is waited for.
+    private void runBuild() throws InterruptedException {
+        long start = System.nanoTime();
+        try {
+            build.run();
+            System.out.println("Built in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        } catch (IOException | RuntimeException | StackOverflowError exception) {
+            exception.printStackTrace();
+        }
+        System.out.println("Watching " + root);
+    }
+}
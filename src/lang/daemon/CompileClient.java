@@ -0,0 +1,44 @@
+package lang.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+
+// Sends a build to the compile server and prints what it answers. The request starts with the secret
+// the server wrote for its user.
+public class CompileClient {
+
+    private CompileClient() {
+    }
+
+    public static int compile(int port, Path secretFile, File workingDirectory, String[] args) throws IOException {
+        String secret = Secret.read(secretFile);
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            output.writeUTF(secret);
+            output.writeUTF(workingDirectory.getAbsolutePath());
+            output.writeInt(args.length);
+            for (String arg : args) {
+                output.writeUTF(arg);
+            }
+            output.flush();
+
+            DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            int exitCode = input.readInt();
+            byte[] text = new byte[input.readInt()];
+            input.readFully(text);
+
+            System.out.write(text);
+            System.out.flush();
+
+            return exitCode;
+        }
+    }
+}
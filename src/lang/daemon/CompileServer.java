@@ -0,0 +1,125 @@
+package lang.daemon;
+
+import lang.Main;
+import lang.build.AnalysedFiles;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.MissingOptionException;
+import org.apache.commons.cli.ParseException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+
+// Long running compiler on a loopback port. The JVM stays warm between builds, so the compiler is
+// loaded and compiled to native code once instead of for every build, and the files analysed by the
+// last build are kept, so a build of the same input analyses only the files affected by a change.
+//
+// A request is the secret of the server, the working directory of the client and its arguments; the
+// answer is the exit code and everything the build printed. Other users can connect to a loopback
+// port too, a request without the secret is answered with an error and nothing is built.
+public class CompileServer {
+
+    private static final int REQUEST_TIMEOUT_MILLIS = 10_000;
+
+    private final int port;
+    private final Path secretFile;
+    private final AnalysedFiles analysedFiles;
+
+    public CompileServer(int port, Path secretFile) {
+        this.port = port;
+        this.secretFile = secretFile;
+        this.analysedFiles = new AnalysedFiles();
+    }
+
+    public void serve() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            String secret = Secret.create(secretFile);
+            System.out.println("Compile server is listening on " + serverSocket.getLocalSocketAddress());
+
+            while (true) {
+                try (Socket socket = serverSocket.accept()) {
+                    handle(socket, secret);
+                } catch (IOException ioException) {
+                    ioException.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void handle(Socket socket, String secret) throws IOException {
+        socket.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+        DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        int exitCode;
+        try (PrintStream out = new PrintStream(buffer, true)) {
+            if (!Secret.matches(secret, input.readUTF())) {
+                out.println("Wrong secret, the client must run as the user of the compile server");
+                exitCode = 1;
+            } else {
+                File workingDirectory = new File(input.readUTF());
+                String[] args = new String[input.readInt()];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = input.readUTF();
+                }
+
+                exitCode = compile(workingDirectory, args, out);
+            }
+        }
+
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        output.writeInt(exitCode);
+        output.writeInt(buffer.size());
+        buffer.writeTo(output);
+        output.flush();
+    }
+
+    // Builds run one at a time, the output of a build is taken from System.out and System.err.
+    private int compile(File workingDirectory, String[] args, PrintStream out) {
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        System.setOut(out);
+        System.setErr(out);
+
+        try {
+            CommandLine cmd = new DefaultParser().parse(Main.createOptions(), args);
+            if (!cmd.hasOption(Main.INPUT)) {
+                throw new MissingOptionException("Missing required option: " + Main.INPUT.charAt(0));
+            }
+
+            Main.build(cmd, workingDirectory, analysedFiles);
+            return 0;
+        } catch (ParseException parseException) {
+            out.println(parseException.getMessage());
+
+            PrintWriter writer = new PrintWriter(out);
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp(writer, formatter.getWidth(), "Compiler", null, Main.createOptions(),
+                    formatter.getLeftPadding(), formatter.getDescPadding(), null);
+            writer.flush();
+            return 1;
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            interruptedException.printStackTrace();
+            return 1;
+        } catch (Exception | StackOverflowError exception) {
+            exception.printStackTrace();
+            return 1;
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package lang.daemon;
+
+import com.google.common.io.BaseEncoding;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Set;
+
+// The compile server only builds for clients of its own user. It writes a random secret to a file
+// only that user can read, in a directory only that user can open, and every request starts with
+// the secret read from there. A new secret is made every time a server starts.
+public class Secret {
+
+    private static final int BYTES = 32;
+    private static final Set<PosixFilePermission> DIRECTORY = PosixFilePermissions.fromString("rwx------");
+    private static final Set<PosixFilePermission> FILE = PosixFilePermissions.fromString("rw-------");
+
+    private Secret() {
+    }
+
+    public static Path defaultFile() {
+        return Paths.get(System.getProperty("user.home"), ".lang", "daemon.secret");
+    }
+
+    public static String create(Path file) throws IOException {
+        byte[] bytes = new byte[BYTES];
+        new SecureRandom().nextBytes(bytes);
+        String secret = BaseEncoding.base16().lowerCase().encode(bytes);
+
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+
+        Path temp;
+        if (isPosix()) {
+            Files.setPosixFilePermissions(directory, DIRECTORY);
+            temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp",
+                    PosixFilePermissions.asFileAttribute(FILE));
+        } else {
+            temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        }
+
+        try {
+            Files.write(temp, secret.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        return secret;
+    }
+
+    public static String read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            throw new IOException("No compile server secret in " + file + ", start the server as this user first");
+        }
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+    }
+
+    // Takes the same time wherever the secrets differ.
+    public static boolean matches(String expected, String actual) {
+        return MessageDigest.isEqual(
+                expected.getBytes(StandardCharsets.UTF_8),
+                actual.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static boolean isPosix() {
+        return FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+    }
+}
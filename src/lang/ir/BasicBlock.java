@@ -5,7 +5,6 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class BasicBlock {
-    private static int BASIC_BLOCK_COUNT = 0;
     private final List<Command> commands;
     private final String name;
     private final List<BasicBlock> input;
@@ -43,10 +42,6 @@ public class BasicBlock {
         return terminator;
     }
 
-    public static BasicBlock nextBlock(String name) {
-        return new BasicBlock(name + "_" + BASIC_BLOCK_COUNT++);
-    }
-
     public String getName() {
         return name;
     }
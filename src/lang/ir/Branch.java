@@ -1,5 +1,7 @@
 package lang.ir;
 
+import java.util.List;
+
 public class Branch implements Terminator {
     private final BasicBlock target;
 
@@ -11,6 +13,11 @@ public class Branch implements Terminator {
         return target;
     }
 
+    @Override
+    public List<BasicBlock> getTargets() {
+        return List.of(target);
+    }
+
     @Override
     public String toString() {
         return "branch " + target.getName();
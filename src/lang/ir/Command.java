@@ -1,26 +1,38 @@
 package lang.ir;
 
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
 import static lang.ir.Operation.*;
 
 public class Command implements Value {
-    private final Value result;
+    private Value result;
     private final Operation operation;
     private final List<Value> parameters;
+    private final List<BasicBlock> blocks;
 
     public Command(Value result, Operation operation, List<Value> parameters) {
+        this(result, operation, parameters, List.of());
+    }
+
+    // The blocks are the predecessors a phi takes each of its parameters from.
+    public Command(Value result, Operation operation, List<Value> parameters, List<BasicBlock> blocks) {
         this.result = result;
         this.operation = operation;
-        this.parameters = parameters;
+        this.parameters = new ArrayList<>(parameters);
+        this.blocks = new ArrayList<>(blocks);
     }
 
     public List<Value> getParameters() {
         return parameters;
     }
 
+    public List<BasicBlock> getBlocks() {
+        return blocks;
+    }
+
     public Operation getOperation() {
         return operation;
     }
@@ -29,6 +41,15 @@ public class Command implements Value {
         return result;
     }
 
+    public void setResult(Value result) {
+        this.result = result;
+    }
+
+    // Stores take the address they write to as their result, every other command defines its result.
+    public boolean definesResult() {
+        return result != null && operation != STORE && operation != STORE_TO_POINTER;
+    }
+
     @Override
     public String toString() {
         return (result == null ? "" : result.toString()) + " " + operation.toString() + " " +
@@ -90,6 +111,14 @@ public class Command implements Value {
         } else if (operation == STORE_TO_POINTER) {
             return "store " + parameters.get(0).getType().toLLVM() + " " +
                     parameters.get(0).toLLVM() + ", " + result.getType().toLLVM() + " " + result.toLLVM();
+        } else if (operation == PHI) {
+            StringBuilder incoming = new StringBuilder();
+            for (int i = 0; i < parameters.size(); i++) {
+                incoming.append(i == 0 ? "" : ", ")
+                        .append("[ ").append(parameters.get(i).toLLVM())
+                        .append(", %").append(blocks.get(i).getName()).append(" ]");
+            }
+            return result.toLLVM() + " = phi " + result.getType().toLLVM() + " " + incoming;
         } else if (operation == ALLOC) {
             return result.toLLVM() + " = alloca " + result.getType().toLLVM();
         } else if (operation == GT
@@ -1,7 +1,9 @@
 package lang.ir;
 
+import java.util.List;
+
 public class ConditionalBranch implements Terminator {
-    private final Value value;
+    private Value value;
     private BasicBlock left;
     private BasicBlock right;
 
@@ -23,6 +25,15 @@ public class ConditionalBranch implements Terminator {
         return value;
     }
 
+    public void setValue(Value value) {
+        this.value = value;
+    }
+
+    @Override
+    public List<BasicBlock> getTargets() {
+        return List.of(left, right);
+    }
+
     @Override
     public String toString() {
         return "branch " + value.toString() + " " + left.getName() + "," + right.getName();
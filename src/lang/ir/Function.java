@@ -1,5 +1,7 @@
 package lang.ir;
 
+import lang.CompilerSession;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -8,6 +10,7 @@ public class Function extends Type implements Value {
     private final List<BasicBlock> blocks;
     private final String name;
     private final boolean systemFunction;
+    private final CompilerSession session;
     private BasicBlock currentBlock;
     private BasicBlock returnBlock;
     private Value returnValue;
@@ -15,13 +18,14 @@ public class Function extends Type implements Value {
     private Type resultType;
     private List<Type> parameterTypes;
 
-    public Function(String name) {
-        this(name, false);
+    public Function(String name, CompilerSession session) {
+        this(name, false, session);
     }
 
-    public Function(String name, boolean systemFunction) {
+    public Function(String name, boolean systemFunction, CompilerSession session) {
         this.name = name;
         this.systemFunction = systemFunction;
+        this.session = session;
         blocks = new ArrayList<>();
     }
 
@@ -43,12 +47,49 @@ public class Function extends Type implements Value {
     }
 
     public BasicBlock appendBlock(String name) {
-        BasicBlock basicBlock = BasicBlock.nextBlock(name);
+        BasicBlock basicBlock = new BasicBlock(session.nextBlockName(name));
         blocks.add(basicBlock);
         currentBlock = basicBlock;
         return basicBlock;
     }
 
+    // Creates a block in front of the given one, named from the same counter as appended blocks.
+    public BasicBlock insertBlockBefore(BasicBlock block, String name) {
+        BasicBlock basicBlock = new BasicBlock(session.nextBlockName(name));
+        blocks.add(blocks.indexOf(block), basicBlock);
+        return basicBlock;
+    }
+
+    // Sets the inputs and outputs of every block again from the terminators, after passes moved edges.
+    public void updateEdges() {
+        for (BasicBlock block : blocks) {
+            block.getInput().clear();
+            block.getOutput().clear();
+        }
+        for (BasicBlock block : blocks) {
+            if (block.getTerminator() == null) {
+                throw new IllegalStateException("Block " + block.getName() + " of " + name + " has no terminator");
+            }
+            for (BasicBlock target : block.getTerminator().getTargets()) {
+                block.addOutput(target);
+                target.addInput(block);
+            }
+        }
+    }
+
+    // LLVM wants numbered values defined in order and without gaps, after passes removed commands they
+    // are numbered again. Parameters keep the first numbers.
+    public void renumberLocals() {
+        int index = parameterTypes.size();
+        for (BasicBlock block : blocks) {
+            for (Command command : block.getCommands()) {
+                if (command.definesResult() && command.getResult() instanceof LocalVariableValue) {
+                    ((LocalVariableValue) command.getResult()).setIndex(index++);
+                }
+            }
+        }
+    }
+
     public BasicBlock getCurrentBlock() {
         return currentBlock;
     }
@@ -5,7 +5,7 @@ import lang.ir.Value;
 
 public class LocalVariableValue implements Value {
     private final Type type;
-    private final int index;
+    private int index;
 
     public LocalVariableValue(int i, Type type) {
         this.index = i;
@@ -26,6 +26,10 @@ public class LocalVariableValue implements Value {
         return index;
     }
 
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
     @Override
     public String toString() {
         return "(%" + index + "," + type.toString() + ")";
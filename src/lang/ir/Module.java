@@ -1,22 +1,34 @@
 package lang.ir;
 
 import java.util.List;
+import java.util.Map;
 
 public class Module {
     private final List<Function> functions;
     private final List<StructType> classes;
     private final List<StringValue> literals;
     private final List<VariableValue> globalVars;
+    private final Map<Function, String> sources;
 
     public Module(
             List<StructType> classes,
             List<Function> functions,
             List<StringValue> literals,
             List<VariableValue> globalVars) {
+        this(classes, functions, literals, globalVars, Map.of());
+    }
+
+    public Module(
+            List<StructType> classes,
+            List<Function> functions,
+            List<StringValue> literals,
+            List<VariableValue> globalVars,
+            Map<Function, String> sources) {
         this.functions = functions;
         this.classes = classes;
         this.literals = literals;
         this.globalVars = globalVars;
+        this.sources = sources;
     }
 
     public List<StructType> getClasses() {
@@ -34,4 +46,9 @@ public class Module {
     public List<VariableValue> getGlobalVars() {
         return globalVars;
     }
+
+    // Path of the file the function is defined in, null for functions the compiler adds itself.
+    public String getSource(Function function) {
+        return sources.get(function);
+    }
 }
@@ -39,7 +39,9 @@ public enum Operation {
     INTTOPTR("<- inttoptr"),
     PTRTOINT("<- ptrtoint"),
 
-    STORE_TO_POINTER("<- store_ptr");
+    STORE_TO_POINTER("<- store_ptr"),
+
+    PHI("<- phi");
 
     private final String print;
 
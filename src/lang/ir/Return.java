@@ -1,7 +1,9 @@
 package lang.ir;
 
+import java.util.List;
+
 public class Return implements Terminator {
-    private final Value value;
+    private Value value;
 
     public Return(Value value) {
         this.value = value;
@@ -11,6 +13,15 @@ public class Return implements Terminator {
         return value;
     }
 
+    public void setValue(Value value) {
+        this.value = value;
+    }
+
+    @Override
+    public List<BasicBlock> getTargets() {
+        return List.of();
+    }
+
     @Override
     public String toString() {
         return "return" + (value == null ? "" : (" " + value.toString()));
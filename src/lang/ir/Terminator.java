@@ -1,5 +1,9 @@
 package lang.ir;
 
+import java.util.List;
+
 public interface Terminator {
     public String toLLVM();
+
+    public List<BasicBlock> getTargets();
 }
@@ -0,0 +1,24 @@
+package lang.ir;
+
+public class UndefValue implements Value {
+    private final Type type;
+
+    public UndefValue(Type type) {
+        this.type = type;
+    }
+
+    @Override
+    public String toString() {
+        return "undef";
+    }
+
+    @Override
+    public String toLLVM() {
+        return "undef";
+    }
+
+    @Override
+    public Type getType() {
+        return type;
+    }
+}
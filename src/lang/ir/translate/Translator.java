@@ -1,5 +1,6 @@
 package lang.ir.translate;
 
+import lang.CompilerSession;
 import lang.ast.*;
 import lang.ast.expression.*;
 import lang.ast.expression.binary.*;
@@ -12,6 +13,7 @@ import lang.ast.expression.unary.prefix.PrefixIncrementMultiplicativeExpressionN
 import lang.ast.statement.*;
 import lang.ir.Module;
 import lang.ir.*;
+import lang.stats.Stats;
 
 import java.nio.ByteBuffer;
 import java.util.*;
@@ -26,6 +28,7 @@ public class Translator {
     private static final String ARRAY_PREFIX = "$_array_";
     private static final int ARRAY_CODE = -1;
 
+    private final CompilerSession session;
     private final Program program;
     private int LITERAL_COUNT = 0;
     private int THIS_COUNT = 0;
@@ -72,7 +75,7 @@ public class Translator {
             1L
     );
 
-    private final Function addInc = translateCommonAddIncFunction("$$$_add_inc");
+    private final Function addInc;
 
     private final LinkedHashMap<AstNode, List<VariableValue>> currentDestructors;
 
@@ -80,7 +83,9 @@ public class Translator {
     private Function destructorTemplate;
     private Function commonDestructor;
 
-    public Translator(Program program) {
+    public Translator(CompilerSession session, Program program) {
+        this.session = session;
+        this.addInc = translateCommonAddIncFunction("$$$_add_inc");
         this.program = program;
         literals = new ArrayList<>();
         classes = new LinkedHashMap<>();
@@ -95,98 +100,98 @@ public class Translator {
     }
 
     private Function getPutStringFunction() {
-        Function function = new Function("puts", true);
+        Function function = new Function("puts", true, session);
         function.setParameterTypes(List.of(new PointerType(INT_32)));
         function.setResultType(INT_32);
         return function;
     }
 
     private Function getPutcharFunction() {
-        Function function = new Function("putchar", true);
+        Function function = new Function("putchar", true, session);
         function.setParameterTypes(List.of(INT_32));
         function.setResultType(INT_32);
         return function;
     }
 
     private Function getGetcharFunction() {
-        Function function = new Function("getchar", true);
+        Function function = new Function("getchar", true, session);
         function.setParameterTypes(List.of());
         function.setResultType(INT_32);
         return function;
     }
 
     private Function getMallocFunction() {
-        Function function = new Function("malloc", true);
+        Function function = new Function("malloc", true, session);
         function.setParameterTypes(List.of(INT_32));
         function.setResultType(new PointerType(INT_64));
         return function;
     }
 
     private Function getFreeFunction() {
-        Function function = new Function("free", true);
+        Function function = new Function("free", true, session);
         function.setParameterTypes(List.of(new PointerType(INT_32)));
         function.setResultType(VOID);
         return function;
     }
 
     private Function getYieldFunction() {
-        Function function = new Function("__yield", true);
+        Function function = new Function("__yield", true, session);
         function.setParameterTypes(List.of());
         function.setResultType(VOID);
         return function;
     }
 
     private Function getSleepFunction() {
-        Function function = new Function("__sleep", true);
+        Function function = new Function("__sleep", true, session);
         function.setParameterTypes(List.of(INT_32));
         function.setResultType(VOID);
         return function;
     }
 
     private Function getJoinFunction() {
-        Function function = new Function("__join", true);
+        Function function = new Function("__join", true, session);
         function.setParameterTypes(List.of(INT_64));
         function.setResultType(VOID);
         return function;
     }
 
     private Function getCreateFiberFunction() {
-        Function function = new Function("__create_fiber", true);
+        Function function = new Function("__create_fiber", true, session);
         function.setParameterTypes(List.of(new PointerType(new FunctionType(VOID, List.of(VOID)))));
         function.setResultType(INT_64);
         return function;
     }
 
     private Function getDeleteFiberFunction() {
-        Function function = new Function("__delete_fiber", true);
+        Function function = new Function("__delete_fiber", true, session);
         function.setParameterTypes(List.of(INT_64));
         function.setResultType(VOID);
         return function;
     }
 
     private Function getCasFunction() {
-        Function function = new Function("__cas", true);
+        Function function = new Function("__cas", true, session);
         function.setParameterTypes(List.of(INT_64, INT_64, INT_64));
         function.setResultType(INT_32);
         return function;
     }
 
     private Function getExchangeFunction() {
-        Function function = new Function("__exchange", true);
+        Function function = new Function("__exchange", true, session);
         function.setParameterTypes(List.of(INT_64, INT_64));
         function.setResultType(INT_64);
         return function;
     }
 
     private Function getLoadFunction() {
-        Function function = new Function("__load", true);
+        Function function = new Function("__load", true, session);
         function.setParameterTypes(List.of(INT_64));
         function.setResultType(INT_64);
         return function;
     }
 
     private Function getStoreFunction() {
-        Function function = new Function("__store", true);
+        Function function = new Function("__store", true, session);
         function.setParameterTypes(List.of(INT_64, INT_64));
         function.setResultType(VOID);
         return function;
@@ -248,11 +253,15 @@ public class Translator {
                                 name = "lang_main";
                             }
 
-                            Function function = new Function(name);
+                            Function function = new Function(name, session);
                             variables.put(name, function);
                             return function;
                         },
-                        java.util.function.Function.identity()));
+                        java.util.function.Function.identity(),
+                        (left, right) -> {
+                            throw new IllegalStateException("Duplicate function " + left);
+                        },
+                        LinkedHashMap::new));
 
         // array with pointer
 
@@ -301,19 +310,37 @@ public class Translator {
                                             new IdentifierNode(name, null),
                                             constructorDefinitionNode.getStatementNode()
                                     );
-                            Function function = new Function(name);
+                            Function function = new Function(name, session);
                             variables.put(name, function);
                             functionToStatement.put(function, functionDefinitionNode);
 
                             return function;
-                        }
-                ));
+                        },
+                        (left, right) -> {
+                            throw new IllegalStateException("Duplicate constructor " + left);
+                        },
+                        LinkedHashMap::new));
 
 
+        Map<AstNode, String> definitionSources = definitionSources();
+        Map<Function, String> sources = new HashMap<>();
+        functionToStatement.forEach((function, functionDefinitionNode) -> {
+            String source = definitionSources.get(functionDefinitionNode);
+            if (source != null) {
+                sources.put(function, source);
+            }
+        });
+        constructors.forEach((constructorDefinitionNode, function) ->
+                sources.put(function, definitionSources.get(constructorDefinitionNode)));
+
         List<Function> functions = functionToStatement
                 .entrySet()
                 .stream()
-                .map(entry -> translateFunction(entry.getKey(), entry.getValue()))
+                .map(entry -> {
+                    try (Stats.Span span = session.getStats().function("translate", entry.getKey().getName())) {
+                        return translateFunction(entry.getKey(), entry.getValue());
+                    }
+                })
                 .collect(Collectors.toList());
         functions.add(commonDestructor);
         functions.addAll(predefinedFunctions);
@@ -324,7 +351,30 @@ public class Translator {
                 new ArrayList<>(classes.values()),
                 functions,
                 literals,
-                globalVars);
+                globalVars,
+                sources);
+    }
+
+    // Function and constructor definitions by the path of the file they are written in. Only files
+    // and classes are walked, definitions do not nest.
+    private Map<AstNode, String> definitionSources() {
+        Map<AstNode, String> sources = new IdentityHashMap<>();
+
+        for (FileNode fileNode : program.getFileNodes()) {
+            Deque<AstNode> nodes = new ArrayDeque<>(List.of(fileNode));
+            while (!nodes.isEmpty()) {
+                AstNode node = nodes.pop();
+                if (node instanceof FunctionDefinitionNode || node instanceof ConstructorDefinitionNode) {
+                    sources.putIfAbsent(node, fileNode.getPath());
+                } else if (node instanceof FileNode
+                        || node instanceof ClassStatementNode
+                        || node instanceof TranslationNode) {
+                    node.getChildren().forEach(nodes::push);
+                }
+            }
+        }
+
+        return sources;
     }
 
     private void translateClassDeclaration(ClassStatementNode cl) {
@@ -355,7 +405,7 @@ public class Translator {
     private void translateCommonDestructorDeclaration() {
         String name = "$_common_destructor";
 
-        commonDestructor = new Function(name);
+        commonDestructor = new Function(name, session);
         List<Type> parameterTypes = new ArrayList<>();
         Type type = new PointerType(INT_32);
         parameterTypes.add(type);
@@ -568,7 +618,7 @@ public class Translator {
     private void translateCommonStructDestructorDeclaration() {
         String name = "$_common_struct_destructor_";
 
-        Function function = new Function(name);
+        Function function = new Function(name, session);
         destructors.put(name, function);
         variables.put(name, function);
 
@@ -641,7 +691,7 @@ public class Translator {
     private void translateArrayDestructorDeclaration() {
         String name = "$_common_array_destructor_";
 
-        Function function = new Function(name);
+        Function function = new Function(name, session);
         destructors.put(name, function);
         variables.put(name, function);
     }
@@ -831,7 +881,7 @@ public class Translator {
     private void translateDestructorDeclaration(ClassStatementNode classStatementNode) {
         String name = "$_destructor_" + DESTRUCTOR_COUNT++;
 
-        Function function = new Function(name);
+        Function function = new Function(name, session);
         destructors.put(name, function);
         structToDestructors.put(classStatementNode.getIdentifierNode().getName(), name);
     }
@@ -1558,7 +1608,7 @@ public class Translator {
     }
 
     private Function translateCommonAddIncFunction(String name) {
-        Function function = new Function(name);
+        Function function = new Function(name, session);
         BasicBlock header = function.appendBlock("header");
         List<Type> parameterTypes = new ArrayList<>();
 
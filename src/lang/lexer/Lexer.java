@@ -8,20 +8,45 @@ import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+
+import static lang.lexer.Token.TokenType.*;
 
 public class Lexer {
 
-    private static final String PATTERN = Arrays
-            .stream(Token.TokenType.values())
-            .map(Token.TokenType::getRegexp)
-            .collect(Collectors.joining("|"));
+    private static final char END = (char) -1;
+
+    // Keywords grouped by first character. Inside a group the order is the declaration order of
+    // Token.TokenType: a keyword wins as soon as it is a prefix of the input, exactly like the
+    // first matching alternative of the former joined regexp ("integer" is INT followed by "eger").
+    private static final Token.TokenType[][] KEYWORDS = new Token.TokenType[128][];
+
+    static {
+        List<Token.TokenType> keywords = List.of(
+                THIS, INTERFACE, IMPORT, CLASS, VOID, INT, LONG, CHAR, FLOAT, FOR,
+                WHILE, IF, ELIF, ELSE, NULL, TRUE, FALSE, CONTINUE, NEW, BREAK, RETURN);
+
+        for (Token.TokenType keyword : keywords) {
+            int first = keywordText(keyword).charAt(0);
+            Token.TokenType[] group = KEYWORDS[first] == null
+                    ? new Token.TokenType[1]
+                    : Arrays.copyOf(KEYWORDS[first], KEYWORDS[first].length + 1);
+            group[group.length - 1] = keyword;
+            KEYWORDS[first] = group;
+        }
+    }
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final int NOT_SCANNED = -2;
+    private static final char[] TAB_TEXT = {'\t'};
 
     private final Reader reader;
+    private final int lastQuote;
     private final List<Message> messages;
-    private final Matcher matcher;
+    private char[] buffer;
+    private int bufferStart;
+    private int bufferLength;
+    private boolean endOfInput;
+    private int cursor;
     private int column;
     private int line;
     private int offset;
@@ -29,10 +54,29 @@ public class Lexer {
     private int lastLine;
     private int lastOffset;
     private int currentSpace;
+    private boolean finished;
     private Token lastToken;
 
+    private Token.TokenType matchType;
+    private int matchEnd;
+
+    private int tokenColumn;
+    private int tokenLine;
+    private int tokenOffset;
+    private char[] tokenText;
+    private int tokenTextOffset;
+    private int tokenTextLength;
+
+    // The last quote is looked for when the first quote is met, reading the rest of the input into
+    // the window. Fine for text already in memory, Main reads files ahead with lastQuote(Reader).
     public Lexer(Reader reader) {
+        this(reader, NOT_SCANNED);
+    }
+
+    // lastQuote is what lastQuote(Reader) gave for the same input.
+    public Lexer(Reader reader, int lastQuote) {
         this.reader = reader;
+        this.lastQuote = lastQuote;
         column = 1;
         line = 1;
         offset = 0;
@@ -40,18 +84,35 @@ public class Lexer {
         lastLine = 1;
         lastOffset = 0;
         currentSpace = 0;
+        cursor = 0;
         messages = new ArrayList<>();
+        buffer = new char[CHUNK_SIZE];
+        bufferStart = 0;
+        bufferLength = 0;
+    }
+
+    // Position of the last quote of the input as the lexer counts it, without '\r' and up to the
+    // first END, -1 if there is none. The input is read through once and not kept.
+    public static int lastQuote(Reader reader) throws IOException {
+        char[] chunk = new char[CHUNK_SIZE];
+        int position = 0;
+        int last = -1;
 
-        StringBuilder builder = new StringBuilder();
-        char current = (char) -1;
-        while ((current = (char) nextSymbol()) != (char) -1) {
-            if(current != '\r') {
-                builder.append(current);
+        int read;
+        while ((read = reader.read(chunk, 0, chunk.length)) >= 0) {
+            for (int i = 0; i < read; i++) {
+                char current = chunk[i];
+                if (current == END) {
+                    return last;
+                } else if (current == '\'') {
+                    last = position;
+                }
+                if (current != '\r') {
+                    position++;
+                }
             }
         }
-
-        Pattern pattern = Pattern.compile(PATTERN);
-        matcher = pattern.matcher(builder.toString());
+        return last;
     }
 
     public List<Message> getMessages() {
@@ -63,79 +124,355 @@ public class Lexer {
     }
 
     public Token nextToken() {
-        if (matcher.find()) {
-            Token.TokenType tokenType = Arrays.stream(Token.TokenType.values())
-                    .filter(t -> matcher.group(t.getGroupName()) != null)
-                    .findFirst()
-                    .orElse(Token.TokenType.EOF);
+        Token.TokenType tokenType = scanToken();
+        lastToken = new Token(new String(tokenText, tokenTextOffset, tokenTextLength),
+                tokenType,
+                new Position(tokenColumn, tokenLine, tokenOffset),
+                new Position(column, line, offset));
+        return lastToken;
+    }
+
+    public Token.TokenType nextToken(TokenBuffer tokens) {
+        Token.TokenType tokenType = scanToken();
+        tokens.add(tokenType, tokenOffset, offset, tokenLine, tokenColumn,
+                tokenText, tokenTextOffset, tokenTextLength);
+        return tokenType;
+    }
+
+    // Scans the next token and leaves its start position and text in the token* fields. The text
+    // points into the input window and is only valid until the next scan.
+    private Token.TokenType scanToken() {
+        while (!finished) {
+            if (!find()) {
+                finished = true;
+                currentSpace = 0;
+                break;
+            }
+
+            Token.TokenType tokenType = matchType;
+            int start = cursor;
+            cursor = matchEnd;
 
             if (tokenType == Token.TokenType.SPACE) {
                 currentSpace++;
 
-                if(currentSpace == 4) {
-                    currentSpace = 0;
-                    lastColumn = column;
-                    lastLine = line;
-                    lastOffset = offset;
-                    lastToken = new Token("\t",
-                            Token.TokenType.TAB,
-                            new Position(lastColumn, lastLine, lastOffset),
-                            new Position(column, line, offset));
-                    return lastToken;
-                }
-
                 lastColumn = column;
                 lastLine = line;
                 lastOffset = offset;
-                lastToken = nextToken();
-                return lastToken;
+
+                if (currentSpace == 4) {
+                    currentSpace = 0;
+                    return produced(Token.TokenType.TAB, TAB_TEXT, 0, TAB_TEXT.length);
+                }
+
+                continue;
             } else {
                 currentSpace = 0;
             }
 
+            updatePosition(start, matchEnd);
+
             if (tokenType == Token.TokenType.COMMENT) {
-                String content = matcher.group(tokenType.getGroupName());
-                updatePosition(content);
                 lastColumn = column;
                 lastLine = line;
                 lastOffset = offset;
-                return nextToken();
+                continue;
+            }
+
+            return produced(tokenType, buffer, start - bufferStart, matchEnd - start);
+        }
+
+        return produced(Token.TokenType.EOF, TAB_TEXT, 0, 0);
+    }
+
+    private Token.TokenType produced(Token.TokenType tokenType, char[] text, int textOffset, int textLength) {
+        tokenColumn = lastColumn;
+        tokenLine = lastLine;
+        tokenOffset = lastOffset;
+        tokenText = text;
+        tokenTextOffset = textOffset;
+        tokenTextLength = textLength;
+
+        lastColumn = column;
+        lastLine = line;
+        lastOffset = offset;
+        return tokenType;
+    }
+
+    // Moves the cursor to the next position where some token matches, skipping characters no token
+    // accepts. Returns false when only unmatched characters are left.
+    private boolean find() {
+        while (charAt(cursor) != END) {
+            if (match(cursor)) {
+                return true;
+            }
+            cursor++;
+        }
+        return false;
+    }
+
+    private boolean match(int start) {
+        char c = charAt(start);
+        char next = charAt(start + 1);
+
+        switch (c) {
+            case '\n':
+                return matched(NEWLINE, start + 1);
+            case '\t':
+                return matched(TAB, start + 1);
+            case ':':
+                return matched(COLON, start + 1);
+            case ' ':
+                return matched(SPACE, start + 1);
+            case '\'':
+                return matchSymbol(start);
+            case '"':
+                return matchString(start);
+            case '-':
+                if (next == '>') {
+                    return matched(ARROW, start + 2);
+                }
+                return next == '-' ? matched(DEC, start + 2) : matched(MINUS, start + 1);
+            case '+':
+                return next == '+' ? matched(INC_ADD, start + 2) : matched(PLUS, start + 1);
+            case '*':
+                return next == '*' ? matched(INC_MUL, start + 2) : matched(ASTERISK, start + 1);
+            case '.':
+                return matched(POINT, start + 1);
+            case '=':
+                return next == '=' ? matched(EQUAL, start + 2) : matched(DEFINE, start + 1);
+            case '!':
+                return next == '=' ? matched(NOT_EQUAL, start + 2) : matched(NOT, start + 1);
+            case '<':
+                return next == '=' ? matched(LE, start + 2) : matched(LT, start + 1);
+            case '>':
+                return next == '=' ? matched(GE, start + 2) : matched(GT, start + 1);
+            case '[':
+                return matched(LB_PAREN, start + 1);
+            case ']':
+                return matched(RB_PAREN, start + 1);
+            case '(':
+                return matched(L_PAREN, start + 1);
+            case ')':
+                return matched(R_PAREN, start + 1);
+            case '{':
+                return matched(LF_PAREN, start + 1);
+            case '}':
+                return matched(RF_PAREN, start + 1);
+            case '?':
+                return matched(QUESTION, start + 1);
+            case '%':
+                return matched(PERCENT, start + 1);
+            case ',':
+                return matched(COMMA, start + 1);
+            case '/':
+                return matchSlash(start);
+            case '|':
+                return next == '|' && matched(OR, start + 2);
+            case '&':
+                return next == '&' && matched(AND, start + 2);
+            default:
+                if (isDigit(c)) {
+                    return matchNumber(start);
+                } else if (isIdentifierStart(c)) {
+                    return matchWord(start);
+                }
+                return false;
+        }
+    }
+
+    private boolean matchNumber(int start) {
+        int end = start;
+        while (isDigit(charAt(end))) {
+            end++;
+        }
+
+        switch (charAt(end)) {
+            case '.':
+                end++;
+                while (isDigit(charAt(end))) {
+                    end++;
+                }
+                return matched(FLOAT_CONSTANT, end);
+            case 'c':
+                return matched(CHAR_CONSTANT, end + 1);
+            case 'L':
+                return matched(LONG_CONSTANT, end + 1);
+            default:
+                return matched(INT_CONSTANT, end);
+        }
+    }
+
+    private boolean matchWord(int start) {
+        char c = charAt(start);
+        Token.TokenType[] candidates = c < KEYWORDS.length ? KEYWORDS[c] : null;
+
+        if (candidates != null) {
+            for (Token.TokenType keyword : candidates) {
+                String text = keywordText(keyword);
+                if (startsWith(text, start)) {
+                    return matched(keyword, start + text.length());
+                }
+            }
+        }
+
+        int end = start + 1;
+        while (isIdentifierPart(charAt(end))) {
+            end++;
+        }
+        return matched(IDENTIFIER, end);
+    }
+
+    // '(.|[^'])+' accepts any character in between, so the greedy match runs up to the last quote
+    // of the input; '' alone is a LITERAL. Unless the last quote was found ahead of time, this is
+    // the only token that needs the rest of the input to be read.
+    private boolean matchSymbol(int start) {
+        int last = lastQuote == NOT_SCANNED ? lastIndexOf('\'') : lastQuote;
+        if (last > start + 1 && charAt(last) == '\'') {
+            return matched(SYMBOL_CONSTANT, last + 1);
+        } else if (charAt(start + 1) == '\'') {
+            return matched(LITERAL, start + 2);
+        }
+        return false;
+    }
+
+    private boolean matchString(int start) {
+        int end = start + 1;
+        while (charAt(end) != END && charAt(end) != '"') {
+            end++;
+        }
+        return charAt(end) == '"' && matched(STRING_CONSTANT, end + 1);
+    }
+
+    // A comment needs a terminating '\n' with no other line terminator before it, otherwise the
+    // first slash is a SLASH token.
+    private boolean matchSlash(int start) {
+        if (charAt(start + 1) == '/') {
+            int end = start + 2;
+            while (charAt(end) != END && !isLineTerminator(charAt(end))) {
+                end++;
             }
+            if (charAt(end) == '\n') {
+                return matched(COMMENT, end + 1);
+            }
+        }
+        return matched(SLASH, start + 1);
+    }
+
+    private boolean matched(Token.TokenType tokenType, int end) {
+        matchType = tokenType;
+        matchEnd = end;
+        return true;
+    }
 
-            String content = matcher.group(tokenType.getGroupName());
-            updatePosition(content);
+    private char charAt(int index) {
+        while (index >= bufferStart + bufferLength) {
+            if (!fill()) {
+                return END;
+            }
+        }
+        return buffer[index - bufferStart];
+    }
 
-            Token token = new Token(content,
-                    tokenType,
-                    new Position(lastColumn, lastLine, lastOffset),
-                    new Position(column, line, offset));
-            lastColumn = column;
-            lastLine = line;
-            lastOffset = offset;
-            lastToken = token;
-            return token;
-        } else {
-            return new Token("",
-                    Token.TokenType.EOF,
-                    new Position(lastColumn, lastLine, lastOffset),
-                    new Position(lastColumn, lastLine, lastOffset));
+    private boolean startsWith(String text, int start) {
+        for (int i = 0; i < text.length(); i++) {
+            if (charAt(start + i) != text.charAt(i)) {
+                return false;
+            }
         }
+        return true;
     }
 
-    private void updatePosition(String content) {
-        offset += content.length();
+    private int lastIndexOf(char c) {
+        while (!endOfInput) {
+            fill();
+        }
 
-        if (content.contains("\n")) {
-            column = 1;
-            line++;
-        } else {
-            column += content.length();
+        for (int i = bufferLength - 1; i >= 0; i--) {
+            if (buffer[i] == c) {
+                return bufferStart + i;
+            }
+        }
+        return -1;
+    }
+
+    // Reads the next chunk of the input behind the current window. Characters before the cursor
+    // are never looked at again, so they are dropped first; the window only grows while a single
+    // token is longer than the buffer.
+    private boolean fill() {
+        if (endOfInput) {
+            return false;
+        }
+
+        int consumed = cursor - bufferStart;
+        if (consumed > 0) {
+            System.arraycopy(buffer, consumed, buffer, 0, bufferLength - consumed);
+            bufferStart = cursor;
+            bufferLength -= consumed;
+        }
+
+        if (buffer.length - bufferLength < CHUNK_SIZE / 2) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+
+        int read = read(buffer, bufferLength, buffer.length - bufferLength);
+        if (read < 0) {
+            endOfInput = true;
+            return false;
+        }
+
+        int length = bufferLength;
+        for (int i = bufferLength; i < bufferLength + read; i++) {
+            char current = buffer[i];
+            if (current == END) {
+                endOfInput = true;
+                break;
+            }
+            if (current != '\r') {
+                buffer[length++] = current;
+            }
+        }
+        bufferLength = length;
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return isIdentifierStart(c) || isDigit(c);
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    // keyword group names are the keywords themselves
+    private static String keywordText(Token.TokenType keyword) {
+        return keyword.getGroupName();
+    }
+
+    private void updatePosition(int start, int end) {
+        offset += end - start;
+
+        for (int i = start - bufferStart; i < end - bufferStart; i++) {
+            if (buffer[i] == '\n') {
+                column = 1;
+                line++;
+                return;
+            }
         }
+        column += end - start;
     }
 
-    private int nextSymbol() {
+    private int read(char[] target, int offset, int length) {
         try {
-            return reader.read();
+            return reader.read(target, offset, length);
         } catch (IOException ioException) {
             throw new IllegalArgumentException(ioException);
         }
@@ -0,0 +1,145 @@
+package lang.lexer;
+
+import lang.Position;
+
+import java.util.Arrays;
+
+// Tokens stored column-wise in primitive arrays. The text of every token is appended to one shared
+// char pool and only turned into a String when it is asked for, so adding a token allocates nothing
+// once the arrays have grown to size.
+//
+// The buffer is a ring over the last `capacity` tokens: indices keep counting up for the whole file
+// and a slot is reused once its token falls out of the window, so memory follows the lookahead of
+// the parser rather than the length of the input.
+public class TokenBuffer {
+
+    private static final Token.TokenType[] TYPES = Token.TokenType.values();
+
+    private final int capacity;
+    private final int[] types;
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] lines;
+    private final int[] columns;
+    private final int[] textStarts;
+    private final int[] textLengths;
+    private char[] text;
+    private int textLength;
+    private int first;
+    private int size;
+
+    public TokenBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity " + capacity);
+        }
+
+        this.capacity = capacity;
+        types = new int[capacity];
+        starts = new int[capacity];
+        ends = new int[capacity];
+        lines = new int[capacity];
+        columns = new int[capacity];
+        textStarts = new int[capacity];
+        textLengths = new int[capacity];
+        text = new char[capacity * 4];
+    }
+
+    public int add(Token.TokenType tokenType,
+                   int start,
+                   int end,
+                   int line,
+                   int column,
+                   char[] source,
+                   int sourceOffset,
+                   int length) {
+        if (size - first == capacity) {
+            first++;
+        }
+
+        if (textLength + length > text.length) {
+            compact();
+            if (textLength + length > text.length) {
+                text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + length));
+            }
+        }
+
+        System.arraycopy(source, sourceOffset, text, textLength, length);
+
+        int slot = slot(size);
+        types[slot] = tokenType.ordinal();
+        starts[slot] = start;
+        ends[slot] = end;
+        lines[slot] = line;
+        columns[slot] = column;
+        textStarts[slot] = textLength;
+        textLengths[slot] = length;
+        textLength += length;
+
+        return size++;
+    }
+
+    // Index one past the last token added so far.
+    public int size() {
+        return size;
+    }
+
+    public Token.TokenType getType(int index) {
+        return TYPES[types[slot(checkIndex(index))]];
+    }
+
+    public String getContent(int index) {
+        int slot = slot(checkIndex(index));
+        return new String(text, textStarts[slot], textLengths[slot]);
+    }
+
+    public Position getStart(int index) {
+        int slot = slot(checkIndex(index));
+        return new Position(columns[slot], lines[slot], starts[slot]);
+    }
+
+    // The lexer moves to the first column of the next line after any token containing a newline and
+    // otherwise by the consumed length, which is zero for a TAB made of spaces and for EOF.
+    public Position getEnd(int index) {
+        int slot = slot(checkIndex(index));
+
+        for (int i = textStarts[slot]; i < textStarts[slot] + textLengths[slot]; i++) {
+            if (text[i] == '\n' && ends[slot] > starts[slot]) {
+                return new Position(1, lines[slot] + 1, ends[slot]);
+            }
+        }
+        return new Position(columns[slot] + ends[slot] - starts[slot], lines[slot], ends[slot]);
+    }
+
+    public Token getToken(int index) {
+        return new Token(getContent(index), getType(index), getStart(index), getEnd(index));
+    }
+
+    // Texts of the tokens still in the window lie in index order at the end of the pool; move them
+    // to the front to make room for the text of the next token.
+    private void compact() {
+        int from = first < size ? textStarts[slot(first)] : textLength;
+        if (from == 0) {
+            return;
+        }
+
+        System.arraycopy(text, from, text, 0, textLength - from);
+        for (int i = first; i < size; i++) {
+            textStarts[slot(i)] -= from;
+        }
+        textLength -= from;
+    }
+
+    private int slot(int index) {
+        return index % capacity;
+    }
+
+    private int checkIndex(int index) {
+        if (index >= size || index < 0) {
+            throw new IndexOutOfBoundsException("Token " + index + " of " + size);
+        }
+        if (index < first) {
+            throw new IllegalStateException("Token " + index + " is out of the lookahead window, first is " + first);
+        }
+        return index;
+    }
+}
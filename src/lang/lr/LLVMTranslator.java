@@ -1,50 +1,206 @@
 package lang.lr;
 
+import lang.CompilerSession;
 import lang.ir.Module;
 import lang.ir.*;
+import lang.stats.Stats;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import static lang.ir.Type.VOID;
 
+// Writes the module as it walks it, so only the text of one instruction is held at a time. Items
+// are separated by a newline and the module does not end with one.
+//
+// With more than one job, functions are rendered on a pool into strings of their own and written
+// in the same order as serially. Only a few functions per job are rendered ahead of the writer.
 public class LLVMTranslator {
 
+    public static final String RUNTIME_MODULE = "runtime";
+
+    private static final int FUNCTIONS_AHEAD_PER_JOB = 4;
+
+    private final CompilerSession session;
     private final Module module;
+    private final int jobs;
+
+    public LLVMTranslator(CompilerSession session, Module module) {
+        this(session, module, 1);
+    }
 
-    public LLVMTranslator(Module module) {
+    public LLVMTranslator(CompilerSession session, Module module, int jobs) {
+        if (jobs < 1) {
+            throw new IllegalArgumentException("Wrong jobs count " + jobs);
+        }
+
+        this.session = session;
         this.module = module;
+        this.jobs = jobs;
     }
 
     public String translate() {
-        StringBuilder builder = new StringBuilder();
-        builder.append("; ModuleID = 'lang_main'\n" +
-                "source_filename = \"lang_main\"\n");
-        builder.append(module.getClasses()
-                .stream()
-                .map(this::translateStruct)
-                .collect(Collectors.joining("\n"))
-        );
-        builder.append("\n");
-        builder.append(module.getGlobalVars()
-                .stream()
-                .map(this::translateGlobalVar)
-                .collect(Collectors.joining("\n"))
-        );
-        builder.append("\n");
-        builder.append(module.getLiterals()
-                .stream()
-                .map(this::translateLiteral)
-                .collect(Collectors.joining("\n"))
-        );
-        builder.append("\n");
-        builder.append(module.getFunctions()
+        StringWriter writer = new StringWriter();
+        try {
+            translate(writer);
+        } catch (IOException ioException) {
+            throw new UncheckedIOException(ioException);
+        }
+        return writer.toString();
+    }
+
+    public void translate(Writer writer) throws IOException {
+        translate(writer, "lang_main", new HashSet<>(module.getFunctions()), true);
+    }
+
+    // Functions grouped by the file they are defined in, in input order. Functions the compiler adds
+    // itself and the global variables go to the last module, "runtime".
+    public Map<String, Set<Function>> splitModules() {
+        Map<String, Set<Function>> modules = new LinkedHashMap<>();
+        Map<String, String> names = new HashMap<>();
+
+        for (Function function : module.getFunctions()) {
+            String source = module.getSource(function);
+            if (source == null || function.isSystemFunction()) {
+                continue;
+            }
+
+            String name = names.computeIfAbsent(source, (k) -> names.size() + "_"
+                    + Paths.get(k).getFileName().toString().replaceAll("[^A-Za-z0-9_.-]", "_"));
+            modules.computeIfAbsent(name, (k) -> new LinkedHashSet<>()).add(function);
+        }
+
+        Set<Function> runtime = new LinkedHashSet<>();
+        for (Function function : module.getFunctions()) {
+            if (module.getSource(function) == null && !function.isSystemFunction()) {
+                runtime.add(function);
+            }
+        }
+        modules.put(RUNTIME_MODULE, runtime);
+
+        return modules;
+    }
+
+    // Writes a module defining the given functions and declaring every other one. Structs and
+    // literals are repeated in every module, literals are private to it.
+    public void translate(Writer writer, String name, Set<Function> defined, boolean definesGlobals)
+            throws IOException {
+        writer.write("; ModuleID = '" + name + "'\n" +
+                "source_filename = \"" + name + "\"\n");
+
+        String separator = "";
+        for (StructType structType : module.getClasses()) {
+            writer.write(separator);
+            writer.write(translateStruct(structType));
+            separator = "\n";
+        }
+        writer.write("\n");
+
+        separator = "";
+        for (VariableValue value : module.getGlobalVars()) {
+            writer.write(separator);
+            writer.write(definesGlobals ? translateGlobalVar(value) : declareGlobalVar(value));
+            separator = "\n";
+        }
+        writer.write("\n");
+
+        separator = "";
+        for (StringValue literal : module.getLiterals()) {
+            writer.write(separator);
+            writer.write(translateLiteral(literal));
+            separator = "\n";
+        }
+        writer.write("\n");
+
+        List<Function> functions = module.getFunctions()
                 .stream()
                 .sorted(Comparator.comparing(Function::isSystemFunction).reversed())
-                .map(this::translateFunction)
-                .collect(Collectors.joining("\n")));
+                .collect(Collectors.toList());
+
+        if (jobs == 1) {
+            separator = "";
+            for (Function function : functions) {
+                writer.write(separator);
+                try (Stats.Span span = session.getStats().function("llvm", function.getName())) {
+                    translateFunction(function, writer, !defined.contains(function));
+                }
+                separator = "\n";
+            }
+        } else {
+            translateFunctions(functions, defined, writer);
+        }
+
+        writer.flush();
+    }
+
+    private void translateFunctions(List<Function> functions, Set<Function> defined, Writer writer)
+            throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(jobs);
+
+        try {
+            Deque<Future<String>> ahead = new ArrayDeque<>();
+            Iterator<Function> next = functions.iterator();
+            String separator = "";
+
+            while (next.hasNext() || !ahead.isEmpty()) {
+                while (next.hasNext() && ahead.size() < jobs * FUNCTIONS_AHEAD_PER_JOB) {
+                    Function function = next.next();
+                    ahead.add(pool.submit(() -> translateFunction(function, !defined.contains(function))));
+                }
+
+                writer.write(separator);
+                writer.write(await(ahead.poll()));
+                separator = "\n";
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private String translateFunction(Function function, boolean declaration) {
+        StringWriter writer = new StringWriter();
+        try (Stats.Span span = session.getStats().function("llvm", function.getName())) {
+            translateFunction(function, writer, declaration);
+        } catch (IOException ioException) {
+            throw new UncheckedIOException(ioException);
+        }
+        return writer.toString();
+    }
 
-        return builder.toString();
+    private static String await(Future<String> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while translating functions");
+        } catch (ExecutionException executionException) {
+            Throwable cause = executionException.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
     }
 
     private String translateGlobalVar(VariableValue value) {
@@ -64,6 +220,10 @@ public class LLVMTranslator {
         return "@" + value.getName() + " = global " + value.getType().toLLVM();
     }
 
+    private String declareGlobalVar(VariableValue value) {
+        return "@" + value.getName() + " = external global " + value.getType().toLLVM();
+    }
+
     private String translateStruct(StructType structType) {
         return "%struct." + structType.getName() + " = type " +
                 "{" + structType.getTypes()
@@ -74,53 +234,50 @@ public class LLVMTranslator {
                 "}";
     }
 
-    private String translateFunction(Function function) {
-        StringBuilder builder = new StringBuilder();
-
-        builder
-                .append(function.isSystemFunction() ? "declare" : "define")
-                .append(" ")
-                .append(function.getType() == VOID ? "void" : function.getType().toLLVM())
-                .append(" ")
-                .append("@")
-                .append(function.getName())
-                .append("(")
-                .append(function.getParameterTypes()
-                        .stream()
-                        .map(Type::toLLVM)
-                        .collect(Collectors.joining(",")))
-                .append(")");
-
-        if (!function.isSystemFunction()) {
-            builder
-                    .append("{\n");
-
-            builder.append(function.getBlocks()
-                    .stream()
-                    .map(this::translateBlock)
-                    .collect(Collectors.joining("\n")));
+    private void translateFunction(Function function, Writer writer, boolean declaration) throws IOException {
+        declaration |= function.isSystemFunction();
 
-            builder.append("\n}");
-        }
+        writer.write(declaration ? "declare" : "define");
+        writer.write(" ");
+        writer.write(function.getType() == VOID ? "void" : function.getType().toLLVM());
+        writer.write(" @");
+        writer.write(function.getName());
+        writer.write("(");
+        writer.write(function.getParameterTypes()
+                .stream()
+                .map(Type::toLLVM)
+                .collect(Collectors.joining(",")));
+        writer.write(")");
 
-        return builder.toString();
-    }
+        if (!declaration) {
+            writer.write("{\n");
 
-    private String translateBlock(BasicBlock b) {
-        StringBuilder builder = new StringBuilder();
+            String separator = "";
+            for (BasicBlock block : function.getBlocks()) {
+                writer.write(separator);
+                translateBlock(block, writer);
+                separator = "\n";
+            }
 
-        builder.append("\t").append(b.getName()).append(":\n");
+            writer.write("\n}");
+        }
+    }
 
-        builder.append(
-                b.getCommands()
-                        .stream()
-                        .map(c -> "\t\t" + c.toLLVM())
-                        .collect(Collectors.joining("\n"))
-        );
+    private void translateBlock(BasicBlock b, Writer writer) throws IOException {
+        writer.write("\t");
+        writer.write(b.getName());
+        writer.write(":\n");
 
-        builder.append("\n\t\t").append(b.getTerminator().toLLVM());
+        String separator = "";
+        for (Command command : b.getCommands()) {
+            writer.write(separator);
+            writer.write("\t\t");
+            writer.write(command.toLLVM());
+            separator = "\n";
+        }
 
-        return builder.toString();
+        writer.write("\n\t\t");
+        writer.write(b.getTerminator().toLLVM());
     }
 
     private String translateLiteral(StringValue stringValue) {
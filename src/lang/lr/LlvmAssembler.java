@@ -0,0 +1,62 @@
+package lang.lr;
+
+import lang.build.BuildFiles;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Optional step after translation: the textual module is piped into llvm-as from the PATH, which
+// writes the bitcode file, so no .ll file is left behind. The compiler itself only emits text,
+// bitcode needs an LLVM installation.
+public class LlvmAssembler {
+
+    public static final String ASSEMBLER = "llvm-as";
+
+    private LlvmAssembler() {
+    }
+
+    public static void assemble(Path path, BuildFiles.Content content) throws IOException, InterruptedException {
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+
+        Path temp = BuildFiles.createTemp(path);
+        Path log = Files.createTempFile(directory, path.getFileName().toString(), ".log.tmp");
+
+        try {
+            // The messages of llvm-as go to a file, it never blocks on a full pipe while the module is
+            // still being written.
+            Process process = new ProcessBuilder(ASSEMBLER, "-", "-o", temp.toString())
+                    .redirectErrorStream(true)
+                    .redirectOutput(log.toFile())
+                    .start();
+
+            IOException writeException = null;
+            try (Writer writer = new BufferedWriter(
+                    new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8))) {
+                content.writeTo(writer);
+            } catch (IOException ioException) {
+                writeException = ioException;
+            }
+
+            int exitCode = process.waitFor();
+            if (exitCode != 0 || writeException != null) {
+                IOException exception = new IOException(ASSEMBLER + " exited with code " + exitCode + "\n"
+                        + new String(Files.readAllBytes(log), StandardCharsets.UTF_8));
+                if (writeException != null) {
+                    exception.addSuppressed(writeException);
+                }
+                throw exception;
+            }
+
+            BuildFiles.replace(temp, path);
+        } finally {
+            Files.deleteIfExists(temp);
+            Files.deleteIfExists(log);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package lang.opt;
+
+import lang.ir.Function;
+
+// Facts about one function computed on demand. An analysis may ask the manager for other analyses.
+public interface Analysis<T> {
+
+    String getName();
+
+    T compute(Function function, AnalysisManager analyses);
+
+    // Whether the result depends on the commands of the blocks and not only on the edges between them.
+    default boolean dependsOnCommands() {
+        return true;
+    }
+}
@@ -0,0 +1,47 @@
+package lang.opt;
+
+import lang.ir.Function;
+import lang.stats.Stats;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Keeps the analyses computed for every function until a pass invalidates them.
+public class AnalysisManager {
+    private final Stats stats;
+    private final Map<Function, Map<Analysis<?>, Object>> results;
+
+    public AnalysisManager(Stats stats) {
+        this.stats = stats;
+        this.results = new HashMap<>();
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(Analysis<T> analysis, Function function) {
+        Map<Analysis<?>, Object> cached = results.computeIfAbsent(function, (k) -> new LinkedHashMap<>());
+
+        T result = (T) cached.get(analysis);
+        if (result == null) {
+            try (Stats.Span span = stats.pass(PassManager.PHASE, analysis.getName())) {
+                result = analysis.compute(function, this);
+            }
+            cached.put(analysis, result);
+        }
+
+        return result;
+    }
+
+    public void invalidate(Function function, Pass.Change change) {
+        Map<Analysis<?>, Object> cached = results.get(function);
+        if (cached == null || change == Pass.Change.NONE) {
+            return;
+        }
+
+        if (change == Pass.Change.BLOCKS) {
+            cached.clear();
+        } else {
+            cached.keySet().removeIf(Analysis::dependsOnCommands);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package lang.opt;
+
+import lang.ir.BasicBlock;
+import lang.ir.Function;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Edges between the blocks of a function as given by their terminators, and the blocks reachable from
+// the entry in reverse postorder. The first block is the entry.
+public class Cfg {
+
+    public static final Analysis<Cfg> ANALYSIS = new Analysis<>() {
+        @Override
+        public String getName() {
+            return "cfg";
+        }
+
+        @Override
+        public Cfg compute(Function function, AnalysisManager analyses) {
+            return new Cfg(function);
+        }
+
+        @Override
+        public boolean dependsOnCommands() {
+            return false;
+        }
+    };
+
+    private final BasicBlock entry;
+    private final Map<BasicBlock, List<BasicBlock>> successors;
+    private final Map<BasicBlock, List<BasicBlock>> predecessors;
+    private final List<BasicBlock> reversePostOrder;
+    private final Set<BasicBlock> reachable;
+
+    public Cfg(Function function) {
+        this.entry = function.getBlocks().isEmpty() ? null : function.getBlocks().get(0);
+        this.successors = new LinkedHashMap<>();
+        this.predecessors = new LinkedHashMap<>();
+
+        for (BasicBlock block : function.getBlocks()) {
+            successors.put(block, new ArrayList<>());
+            predecessors.put(block, new ArrayList<>());
+        }
+        for (BasicBlock block : function.getBlocks()) {
+            if (block.getTerminator() == null) {
+                throw new IllegalStateException("Block " + block.getName() + " of " + function.getName()
+                        + " has no terminator");
+            }
+            for (BasicBlock target : block.getTerminator().getTargets()) {
+                if (!successors.get(block).contains(target)) {
+                    successors.get(block).add(target);
+                    predecessors.get(target).add(block);
+                }
+            }
+        }
+
+        this.reversePostOrder = entry == null ? List.of() : reversePostOrder(entry);
+        this.reachable = new HashSet<>(reversePostOrder);
+    }
+
+    public BasicBlock getEntry() {
+        return entry;
+    }
+
+    public List<BasicBlock> getSuccessors(BasicBlock block) {
+        return Collections.unmodifiableList(successors.get(block));
+    }
+
+    public List<BasicBlock> getPredecessors(BasicBlock block) {
+        return Collections.unmodifiableList(predecessors.get(block));
+    }
+
+    public List<BasicBlock> getReversePostOrder() {
+        return Collections.unmodifiableList(reversePostOrder);
+    }
+
+    public boolean isReachable(BasicBlock block) {
+        return reachable.contains(block);
+    }
+
+    // Iterative depth first search, deep functions do not overflow the stack.
+    private List<BasicBlock> reversePostOrder(BasicBlock start) {
+        List<BasicBlock> postOrder = new ArrayList<>();
+        Set<BasicBlock> visited = new HashSet<>();
+        Deque<Iterator<BasicBlock>> path = new ArrayDeque<>();
+        Deque<BasicBlock> blocks = new ArrayDeque<>();
+
+        visited.add(start);
+        blocks.push(start);
+        path.push(successors.get(start).iterator());
+
+        while (!path.isEmpty()) {
+            Iterator<BasicBlock> next = path.peek();
+            if (next.hasNext()) {
+                BasicBlock target = next.next();
+                if (visited.add(target)) {
+                    blocks.push(target);
+                    path.push(successors.get(target).iterator());
+                }
+            } else {
+                path.pop();
+                postOrder.add(blocks.pop());
+            }
+        }
+
+        Collections.reverse(postOrder);
+        return postOrder;
+    }
+}
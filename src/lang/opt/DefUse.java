@@ -0,0 +1,299 @@
+package lang.opt;
+
+import lang.ir.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Definitions and uses of the variables of a function: numbered temporaries, named locals and
+// globals. Constants are not tracked. Passes that change commands through this index keep it
+// valid and can rewrite every use of a value without scanning the function again.
+//
+// Named variables are told apart by name, the translator may refer to one with several objects.
+public class DefUse {
+
+    public static final Analysis<DefUse> ANALYSIS = new Analysis<>() {
+        @Override
+        public String getName() {
+            return "def-use";
+        }
+
+        @Override
+        public DefUse compute(Function function, AnalysisManager analyses) {
+            return new DefUse(function);
+        }
+    };
+
+    // One operand of a command or the value of a terminator.
+    public static final class Use {
+        public static final int RESULT = -1;
+
+        private final BasicBlock block;
+        private final Command command;
+        private final int index;
+
+        private Use(BasicBlock block, Command command, int index) {
+            this.block = block;
+            this.command = command;
+            this.index = index;
+        }
+
+        public BasicBlock getBlock() {
+            return block;
+        }
+
+        // Null when the value is used by the terminator of the block.
+        public Command getCommand() {
+            return command;
+        }
+
+        // Index of the parameter, RESULT for the address a store writes to.
+        public int getIndex() {
+            return index;
+        }
+
+        public Value get() {
+            if (command == null) {
+                return terminatorValue(block.getTerminator());
+            }
+            return index == RESULT ? command.getResult() : command.getParameters().get(index);
+        }
+
+        private void set(Value value) {
+            if (command == null) {
+                Terminator terminator = block.getTerminator();
+                if (terminator instanceof ConditionalBranch) {
+                    ((ConditionalBranch) terminator).setValue(value);
+                } else {
+                    ((Return) terminator).setValue(value);
+                }
+            } else if (index == RESULT) {
+                command.setResult(value);
+            } else {
+                command.getParameters().set(index, value);
+            }
+        }
+    }
+
+    private final Map<Object, Command> definitions;
+    private final Map<Object, Set<Use>> uses;
+    private final Map<Command, BasicBlock> blocks;
+    private final Map<Command, List<Use>> operands;
+    private final Map<BasicBlock, Use> terminatorUses;
+
+    public DefUse(Function function) {
+        this.definitions = new HashMap<>();
+        this.uses = new HashMap<>();
+        this.blocks = new HashMap<>();
+        this.operands = new HashMap<>();
+        this.terminatorUses = new HashMap<>();
+
+        for (BasicBlock block : function.getBlocks()) {
+            for (Command command : block.getCommands()) {
+                add(block, command);
+            }
+            addTerminator(block);
+        }
+    }
+
+    public Command getDefinition(Value value) {
+        Object key = key(value);
+        return key == null ? null : definitions.get(key);
+    }
+
+    public BasicBlock getBlock(Command command) {
+        return blocks.get(command);
+    }
+
+    public Collection<Use> getUses(Value value) {
+        Object key = key(value);
+        Set<Use> result = key == null ? null : uses.get(key);
+        return result == null ? List.of() : Collections.unmodifiableCollection(result);
+    }
+
+    public boolean hasUses(Value value) {
+        return !getUses(value).isEmpty();
+    }
+
+    // Every use of the first value reads the second one afterwards.
+    public void replaceAllUsesWith(Value from, Value to) {
+        Object fromKey = key(from);
+        if (fromKey == null || fromKey.equals(key(to))) {
+            return;
+        }
+
+        Set<Use> moved = uses.remove(fromKey);
+        if (moved == null) {
+            return;
+        }
+
+        Object toKey = key(to);
+        for (Use use : moved) {
+            use.set(to);
+            if (toKey != null) {
+                uses.computeIfAbsent(toKey, (k) -> new LinkedHashSet<>()).add(use);
+            }
+        }
+    }
+
+    public void insert(BasicBlock block, int index, Command command) {
+        block.getCommands().add(index, command);
+        add(block, command);
+    }
+
+    public void addIncoming(Command phi, Value value, BasicBlock block) {
+        phi.getParameters().add(value);
+        phi.getBlocks().add(block);
+
+        Use use = new Use(blocks.get(phi), phi, phi.getParameters().size() - 1);
+        operands.get(phi).add(use);
+        addUse(use);
+    }
+
+    // Drops the parameters a phi takes from the block, after the edge from it went away.
+    public void removeIncoming(Command phi, BasicBlock block) {
+        for (Use use : operands.get(phi)) {
+            removeUse(use);
+        }
+        for (int i = phi.getBlocks().size() - 1; i >= 0; i--) {
+            if (phi.getBlocks().get(i) == block) {
+                phi.getParameters().remove(i);
+                phi.getBlocks().remove(i);
+            }
+        }
+        add(blocks.get(phi), phi);
+    }
+
+    // The terminator of the block is replaced, the uses of the old one are dropped.
+    public void setTerminator(BasicBlock block, Terminator terminator) {
+        Use use = terminatorUses.remove(block);
+        if (use != null) {
+            removeUse(use);
+        }
+        block.setTerminator(terminator);
+        addTerminator(block);
+    }
+
+    // Removes a command whose result nothing uses any more.
+    public void erase(Command command) {
+        BasicBlock block = blocks.get(command);
+        forget(command, Set.of(command));
+        block.getCommands().remove(command);
+    }
+
+    // Removes commands whose results are only used among themselves, with one pass over each block.
+    public void erase(Collection<Command> commands) {
+        Set<Command> erased = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<BasicBlock> changed = new HashSet<>();
+        for (Command command : commands) {
+            changed.add(blocks.get(command));
+            erased.add(command);
+        }
+        for (Command command : commands) {
+            forget(command, erased);
+        }
+        for (BasicBlock block : changed) {
+            block.getCommands().removeIf(erased::contains);
+        }
+    }
+
+    private void forget(Command command, Set<Command> erased) {
+        if (command.definesResult() && !onlyUsedBy(command.getResult(), erased)) {
+            throw new IllegalStateException("Erased command " + command + " is still used");
+        }
+
+        for (Use use : operands.remove(command)) {
+            removeUse(use);
+        }
+        if (command.definesResult()) {
+            Object key = key(command.getResult());
+            if (key != null && definitions.get(key) == command) {
+                definitions.remove(key);
+            }
+        }
+        blocks.remove(command);
+    }
+
+    private boolean onlyUsedBy(Value value, Set<Command> commands) {
+        for (Use use : getUses(value)) {
+            if (use.getCommand() == null || !commands.contains(use.getCommand())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void add(BasicBlock block, Command command) {
+        blocks.put(command, block);
+
+        List<Use> commandUses = new ArrayList<>();
+        operands.put(command, commandUses);
+
+        if (command.definesResult()) {
+            Object key = key(command.getResult());
+            if (key != null) {
+                definitions.put(key, command);
+            }
+        } else if (command.getResult() != null) {
+            commandUses.add(new Use(block, command, Use.RESULT));
+        }
+        for (int i = 0; i < command.getParameters().size(); i++) {
+            commandUses.add(new Use(block, command, i));
+        }
+
+        commandUses.forEach(this::addUse);
+    }
+
+    private void addTerminator(BasicBlock block) {
+        if (terminatorValue(block.getTerminator()) != null) {
+            Use use = new Use(block, null, 0);
+            terminatorUses.put(block, use);
+            addUse(use);
+        }
+    }
+
+    private void addUse(Use use) {
+        Object key = key(use.get());
+        if (key != null) {
+            uses.computeIfAbsent(key, (k) -> new LinkedHashSet<>()).add(use);
+        }
+    }
+
+    private void removeUse(Use use) {
+        Object key = key(use.get());
+        Set<Use> valueUses = key == null ? null : uses.get(key);
+        if (valueUses != null) {
+            valueUses.remove(use);
+            if (valueUses.isEmpty()) {
+                uses.remove(key);
+            }
+        }
+    }
+
+    private static Value terminatorValue(Terminator terminator) {
+        if (terminator instanceof ConditionalBranch) {
+            return ((ConditionalBranch) terminator).getValue();
+        } else if (terminator instanceof Return) {
+            return ((Return) terminator).getValue();
+        }
+        return null;
+    }
+
+    // Temporaries and other values are their own key, named variables are keyed by their name.
+    private static Object key(Value value) {
+        if (value instanceof VariableValue) {
+            return value.toLLVM();
+        } else if (value instanceof LocalVariableValue) {
+            return value;
+        }
+        return null;
+    }
+}
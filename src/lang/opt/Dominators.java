@@ -0,0 +1,180 @@
+package lang.opt;
+
+import lang.ir.BasicBlock;
+import lang.ir.Function;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Dominator tree and dominance frontiers of the blocks reachable from the entry, computed with the
+// iterative algorithm of Cooper, Harvey and Kennedy over the reverse postorder of the CFG.
+public class Dominators {
+
+    public static final Analysis<Dominators> ANALYSIS = new Analysis<>() {
+        @Override
+        public String getName() {
+            return "dominators";
+        }
+
+        @Override
+        public Dominators compute(Function function, AnalysisManager analyses) {
+            return new Dominators(analyses.get(Cfg.ANALYSIS, function));
+        }
+
+        @Override
+        public boolean dependsOnCommands() {
+            return false;
+        }
+    };
+
+    private final Cfg cfg;
+    private final Map<BasicBlock, Integer> order;
+    private final Map<BasicBlock, BasicBlock> idoms;
+    private final Map<BasicBlock, List<BasicBlock>> children;
+    private final Map<BasicBlock, Set<BasicBlock>> frontiers;
+    private final Map<BasicBlock, Integer> preorder;
+    private final Map<BasicBlock, Integer> postorder;
+
+    public Dominators(Cfg cfg) {
+        this.cfg = cfg;
+        this.order = new HashMap<>();
+        this.idoms = new HashMap<>();
+        this.children = new HashMap<>();
+        this.frontiers = new HashMap<>();
+        this.preorder = new HashMap<>();
+        this.postorder = new HashMap<>();
+
+        List<BasicBlock> blocks = cfg.getReversePostOrder();
+        for (int i = 0; i < blocks.size(); i++) {
+            order.put(blocks.get(i), i);
+            children.put(blocks.get(i), new ArrayList<>());
+            frontiers.put(blocks.get(i), new LinkedHashSet<>());
+        }
+
+        if (!blocks.isEmpty()) {
+            computeIdoms(blocks);
+            computeFrontiers(blocks);
+            numberTree(blocks.get(0));
+        }
+    }
+
+    // Null for the entry and for unreachable blocks.
+    public BasicBlock getImmediateDominator(BasicBlock block) {
+        return block == cfg.getEntry() ? null : idoms.get(block);
+    }
+
+    // Children in the dominator tree, in reverse postorder.
+    public List<BasicBlock> getChildren(BasicBlock block) {
+        return Collections.unmodifiableList(children.getOrDefault(block, List.of()));
+    }
+
+    public Set<BasicBlock> getFrontier(BasicBlock block) {
+        return Collections.unmodifiableSet(frontiers.getOrDefault(block, Set.of()));
+    }
+
+    // Whether every path from the entry to the second block passes the first one. A block dominates itself.
+    public boolean dominates(BasicBlock dominator, BasicBlock block) {
+        if (!preorder.containsKey(dominator) || !preorder.containsKey(block)) {
+            return false;
+        }
+        return preorder.get(dominator) <= preorder.get(block) && postorder.get(block) <= postorder.get(dominator);
+    }
+
+    public boolean isReachable(BasicBlock block) {
+        return order.containsKey(block);
+    }
+
+    private void computeIdoms(List<BasicBlock> blocks) {
+        BasicBlock entry = blocks.get(0);
+        idoms.put(entry, entry);
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            for (BasicBlock block : blocks.subList(1, blocks.size())) {
+                BasicBlock idom = null;
+                for (BasicBlock predecessor : cfg.getPredecessors(block)) {
+                    if (!idoms.containsKey(predecessor)) {
+                        continue;
+                    }
+                    idom = idom == null ? predecessor : intersect(predecessor, idom);
+                }
+
+                if (idom != idoms.get(block)) {
+                    idoms.put(block, idom);
+                    changed = true;
+                }
+            }
+        }
+
+        for (BasicBlock block : blocks.subList(1, blocks.size())) {
+            children.get(idoms.get(block)).add(block);
+        }
+    }
+
+    private BasicBlock intersect(BasicBlock left, BasicBlock right) {
+        while (left != right) {
+            while (order.get(left) > order.get(right)) {
+                left = idoms.get(left);
+            }
+            while (order.get(right) > order.get(left)) {
+                right = idoms.get(right);
+            }
+        }
+        return left;
+    }
+
+    private void computeFrontiers(List<BasicBlock> blocks) {
+        for (BasicBlock block : blocks) {
+            List<BasicBlock> predecessors = new ArrayList<>();
+            for (BasicBlock predecessor : cfg.getPredecessors(block)) {
+                if (order.containsKey(predecessor)) {
+                    predecessors.add(predecessor);
+                }
+            }
+            if (predecessors.size() < 2) {
+                continue;
+            }
+
+            for (BasicBlock predecessor : predecessors) {
+                BasicBlock runner = predecessor;
+                while (runner != idoms.get(block)) {
+                    frontiers.get(runner).add(block);
+                    runner = idoms.get(runner);
+                }
+            }
+        }
+    }
+
+    private void numberTree(BasicBlock entry) {
+        int counter = 0;
+        Deque<BasicBlock> blocks = new ArrayDeque<>();
+        Deque<Iterator<BasicBlock>> path = new ArrayDeque<>();
+
+        preorder.put(entry, counter++);
+        blocks.push(entry);
+        path.push(children.get(entry).iterator());
+
+        while (!path.isEmpty()) {
+            Iterator<BasicBlock> next = path.peek();
+            if (next.hasNext()) {
+                BasicBlock child = next.next();
+                preorder.put(child, counter++);
+                blocks.push(child);
+                path.push(children.get(child).iterator());
+            } else {
+                path.pop();
+                postorder.put(blocks.pop(), counter++);
+            }
+        }
+    }
+}
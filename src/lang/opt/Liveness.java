@@ -0,0 +1,185 @@
+package lang.opt;
+
+import lang.ir.*;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Values live on entry to and on exit from every block, one bit per value. A phi reads its
+// parameters at the end of the block they come from and defines its result on entry to its block.
+//
+// Values are the temporaries, parameters and named locals of the function; globals and constants are
+// always available and are left out. Named locals are told apart by name like in DefUse.
+public class Liveness {
+
+    public static final Analysis<Liveness> ANALYSIS = new Analysis<>() {
+        @Override
+        public String getName() {
+            return "liveness";
+        }
+
+        @Override
+        public Liveness compute(Function function, AnalysisManager analyses) {
+            return new Liveness(function, analyses.get(Cfg.ANALYSIS, function));
+        }
+    };
+
+    private final Map<Object, Integer> indexes;
+    private final List<Value> values;
+    private final Map<BasicBlock, BitSet> liveIn;
+    private final Map<BasicBlock, BitSet> liveOut;
+
+    public Liveness(Function function, Cfg cfg) {
+        this.indexes = new HashMap<>();
+        this.values = new ArrayList<>();
+        this.liveIn = new HashMap<>();
+        this.liveOut = new HashMap<>();
+
+        Map<BasicBlock, BitSet> uses = new HashMap<>();
+        Map<BasicBlock, BitSet> definitions = new HashMap<>();
+        Map<BasicBlock, BitSet> phiDefinitions = new HashMap<>();
+        Map<BasicBlock, Map<BasicBlock, BitSet>> phiUses = new HashMap<>();
+
+        for (BasicBlock block : function.getBlocks()) {
+            BitSet used = new BitSet();
+            BitSet defined = new BitSet();
+            BitSet phiDefined = new BitSet();
+
+            for (Command command : block.getCommands()) {
+                if (command.getOperation() == Operation.PHI) {
+                    for (int i = 0; i < command.getParameters().size(); i++) {
+                        int index = index(command.getParameters().get(i));
+                        if (index >= 0) {
+                            phiUses.computeIfAbsent(block, (k) -> new HashMap<>())
+                                    .computeIfAbsent(command.getBlocks().get(i), (k) -> new BitSet())
+                                    .set(index);
+                        }
+                    }
+                    setIndex(phiDefined, command.getResult());
+                    setIndex(defined, command.getResult());
+                    continue;
+                }
+
+                for (Value parameter : command.getParameters()) {
+                    useIndex(used, defined, parameter);
+                }
+                if (command.definesResult()) {
+                    setIndex(defined, command.getResult());
+                } else {
+                    useIndex(used, defined, command.getResult());
+                }
+            }
+
+            Terminator terminator = block.getTerminator();
+            if (terminator instanceof ConditionalBranch) {
+                useIndex(used, defined, ((ConditionalBranch) terminator).getValue());
+            } else if (terminator instanceof Return) {
+                useIndex(used, defined, ((Return) terminator).getValue());
+            }
+
+            uses.put(block, used);
+            definitions.put(block, defined);
+            phiDefinitions.put(block, phiDefined);
+            liveIn.put(block, new BitSet());
+            liveOut.put(block, new BitSet());
+        }
+
+        // Postorder visits successors first, so few rounds are needed.
+        List<BasicBlock> postOrder = new ArrayList<>(cfg.getReversePostOrder());
+        Collections.reverse(postOrder);
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            for (BasicBlock block : postOrder) {
+                BitSet out = new BitSet();
+                for (BasicBlock successor : cfg.getSuccessors(block)) {
+                    BitSet in = (BitSet) liveIn.get(successor).clone();
+                    in.andNot(phiDefinitions.get(successor));
+                    out.or(in);
+
+                    BitSet phiUsed = phiUses.getOrDefault(successor, Map.of()).get(block);
+                    if (phiUsed != null) {
+                        out.or(phiUsed);
+                    }
+                }
+
+                BitSet in = (BitSet) out.clone();
+                in.andNot(definitions.get(block));
+                in.or(uses.get(block));
+                in.or(phiDefinitions.get(block));
+
+                if (!out.equals(liveOut.get(block)) || !in.equals(liveIn.get(block))) {
+                    liveOut.put(block, out);
+                    liveIn.put(block, in);
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    public boolean isLiveIn(Value value, BasicBlock block) {
+        Integer index = indexes.get(key(value));
+        return index != null && liveIn.containsKey(block) && liveIn.get(block).get(index);
+    }
+
+    public boolean isLiveOut(Value value, BasicBlock block) {
+        Integer index = indexes.get(key(value));
+        return index != null && liveOut.containsKey(block) && liveOut.get(block).get(index);
+    }
+
+    public List<Value> getLiveIn(BasicBlock block) {
+        return valuesOf(liveIn.get(block));
+    }
+
+    public List<Value> getLiveOut(BasicBlock block) {
+        return valuesOf(liveOut.get(block));
+    }
+
+    private List<Value> valuesOf(BitSet bits) {
+        List<Value> result = new ArrayList<>();
+        if (bits != null) {
+            bits.stream().forEach(index -> result.add(values.get(index)));
+        }
+        return result;
+    }
+
+    private void useIndex(BitSet used, BitSet defined, Value value) {
+        int index = index(value);
+        if (index >= 0 && !defined.get(index)) {
+            used.set(index);
+        }
+    }
+
+    private void setIndex(BitSet bits, Value value) {
+        int index = index(value);
+        if (index >= 0) {
+            bits.set(index);
+        }
+    }
+
+    private int index(Value value) {
+        Object key = key(value);
+        if (key == null) {
+            return -1;
+        }
+        return indexes.computeIfAbsent(key, (k) -> {
+            values.add(value);
+            return values.size() - 1;
+        });
+    }
+
+    private static Object key(Value value) {
+        if (value instanceof VariableValue && !((VariableValue) value).isGlobal()) {
+            return value.toLLVM();
+        } else if (value instanceof LocalVariableValue) {
+            return value;
+        }
+        return null;
+    }
+}
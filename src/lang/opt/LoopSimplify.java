@@ -0,0 +1,107 @@
+package lang.opt;
+
+import lang.ir.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Gives every loop a preheader: a block that all entries to the loop pass and that only branches to
+// the header, where code hoisted out of the loop can go. Phis of the header take the values coming
+// from outside from the preheader, which merges them with a phi of its own when they differ.
+public class LoopSimplify implements Pass {
+
+    private int phiCount;
+
+    @Override
+    public String getName() {
+        return "loop-simplify";
+    }
+
+    @Override
+    public Change run(Function function, AnalysisManager analyses) {
+        Loops loops = analyses.get(Loops.ANALYSIS, function);
+        Cfg cfg = analyses.get(Cfg.ANALYSIS, function);
+
+        boolean changed = false;
+        for (Loops.Loop loop : loops.getLoops()) {
+            if (loop.getHeader() == cfg.getEntry() || loops.getPreheader(loop) != null) {
+                continue;
+            }
+
+            insertPreheader(function, loop.getHeader(), loops.getEnteringBlocks(loop));
+            changed = true;
+        }
+
+        if (!changed) {
+            return Change.NONE;
+        }
+
+        function.updateEdges();
+        return Change.BLOCKS;
+    }
+
+    private void insertPreheader(Function function, BasicBlock header, List<BasicBlock> entering) {
+        BasicBlock preheader = function.insertBlockBefore(header, "preheader");
+        preheader.setTerminator(new Branch(header));
+
+        for (BasicBlock block : entering) {
+            Terminator terminator = block.getTerminator();
+            if (terminator instanceof Branch) {
+                block.setTerminator(new Branch(preheader));
+            } else if (terminator instanceof ConditionalBranch) {
+                ConditionalBranch conditionalBranch = (ConditionalBranch) terminator;
+                if (conditionalBranch.getLeft() == header) {
+                    conditionalBranch.setLeft(preheader);
+                }
+                if (conditionalBranch.getRight() == header) {
+                    conditionalBranch.setRight(preheader);
+                }
+            }
+        }
+
+        for (Command phi : header.getCommands()) {
+            if (phi.getOperation() != Operation.PHI) {
+                break;
+            }
+
+            List<Value> values = new ArrayList<>();
+            List<BasicBlock> blocks = new ArrayList<>();
+            for (int i = phi.getParameters().size() - 1; i >= 0; i--) {
+                if (entering.contains(phi.getBlocks().get(i))) {
+                    values.add(0, phi.getParameters().remove(i));
+                    blocks.add(0, phi.getBlocks().remove(i));
+                }
+            }
+            if (values.isEmpty()) {
+                continue;
+            }
+
+            Value value = values.get(0);
+            if (values.stream().anyMatch(other -> !same(other, value))) {
+                Command merge = new Command(
+                        new VariableValue("$$_preheader_phi_" + phiCount++, phi.getResult().getType()),
+                        Operation.PHI,
+                        values,
+                        blocks);
+                preheader.addCommand(merge);
+                phi.getParameters().add(merge.getResult());
+            } else {
+                phi.getParameters().add(value);
+            }
+            phi.getBlocks().add(preheader);
+        }
+    }
+
+    // Constants and named locals are the same when they are written the same, temporaries only when
+    // they are one object.
+    private static boolean same(Value left, Value right) {
+        if (left == right) {
+            return true;
+        }
+        if (left instanceof LocalVariableValue || right instanceof LocalVariableValue
+                || left.getType() == null || right.getType() == null) {
+            return false;
+        }
+        return left.toLLVM().equals(right.toLLVM()) && left.getType().toLLVM().equals(right.getType().toLLVM());
+    }
+}
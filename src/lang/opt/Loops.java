@@ -0,0 +1,196 @@
+package lang.opt;
+
+import lang.ir.BasicBlock;
+import lang.ir.Function;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Natural loops of a function nested into a forest. A loop is the header with every block that reaches
+// one of its back edges, an edge to a block that dominates where it comes from, without passing the
+// header. Back edges to one header make a single loop.
+public class Loops {
+
+    public static final Analysis<Loops> ANALYSIS = new Analysis<>() {
+        @Override
+        public String getName() {
+            return "loops";
+        }
+
+        @Override
+        public Loops compute(Function function, AnalysisManager analyses) {
+            return new Loops(analyses.get(Cfg.ANALYSIS, function), analyses.get(Dominators.ANALYSIS, function));
+        }
+
+        @Override
+        public boolean dependsOnCommands() {
+            return false;
+        }
+    };
+
+    public static class Loop {
+        private final BasicBlock header;
+        private final Set<BasicBlock> blocks;
+        private final List<BasicBlock> latches;
+        private final List<Loop> children;
+        private Loop parent;
+
+        private Loop(BasicBlock header) {
+            this.header = header;
+            this.blocks = new LinkedHashSet<>();
+            this.latches = new ArrayList<>();
+            this.children = new ArrayList<>();
+        }
+
+        public BasicBlock getHeader() {
+            return header;
+        }
+
+        // Blocks of the loop and of the loops inside it, the header first.
+        public Set<BasicBlock> getBlocks() {
+            return Collections.unmodifiableSet(blocks);
+        }
+
+        public boolean contains(BasicBlock block) {
+            return blocks.contains(block);
+        }
+
+        // Blocks of the loop that branch back to the header.
+        public List<BasicBlock> getLatches() {
+            return Collections.unmodifiableList(latches);
+        }
+
+        public Loop getParent() {
+            return parent;
+        }
+
+        public List<Loop> getChildren() {
+            return Collections.unmodifiableList(children);
+        }
+
+        // One for an outermost loop.
+        public int getDepth() {
+            return parent == null ? 1 : parent.getDepth() + 1;
+        }
+    }
+
+    private final Cfg cfg;
+    private final List<Loop> loops;
+    private final List<Loop> topLevel;
+    private final Map<BasicBlock, Loop> innermost;
+
+    public Loops(Cfg cfg, Dominators dominators) {
+        this.cfg = cfg;
+        this.loops = new ArrayList<>();
+        this.topLevel = new ArrayList<>();
+        this.innermost = new HashMap<>();
+
+        Map<BasicBlock, Loop> byHeader = new LinkedHashMap<>();
+        for (BasicBlock block : cfg.getReversePostOrder()) {
+            for (BasicBlock predecessor : cfg.getPredecessors(block)) {
+                if (dominators.dominates(block, predecessor)) {
+                    byHeader.computeIfAbsent(block, Loop::new).latches.add(predecessor);
+                }
+            }
+        }
+
+        for (Loop loop : byHeader.values()) {
+            collectBlocks(loop, dominators);
+            loops.add(loop);
+        }
+
+        // Outer loops are larger, so they are nested first and inner loops take their blocks after.
+        List<Loop> bySize = new ArrayList<>(loops);
+        bySize.sort(Comparator.comparingInt((Loop loop) -> loop.blocks.size()).reversed());
+        for (Loop loop : bySize) {
+            loop.parent = innermost.get(loop.header);
+            if (loop.parent == null) {
+                topLevel.add(loop);
+            } else {
+                loop.parent.children.add(loop);
+            }
+            for (BasicBlock block : loop.blocks) {
+                innermost.put(block, loop);
+            }
+        }
+    }
+
+    // Outermost loops in the order of their headers in reverse postorder.
+    public List<Loop> getTopLevelLoops() {
+        return Collections.unmodifiableList(topLevel);
+    }
+
+    // Every loop, in the order of their headers in reverse postorder.
+    public List<Loop> getLoops() {
+        return Collections.unmodifiableList(loops);
+    }
+
+    // The innermost loop the block is in, null outside of loops.
+    public Loop getLoopFor(BasicBlock block) {
+        return innermost.get(block);
+    }
+
+    public int getDepth(BasicBlock block) {
+        Loop loop = innermost.get(block);
+        return loop == null ? 0 : loop.getDepth();
+    }
+
+    // The only block outside of the loop branching to the header, when it branches nowhere else.
+    public BasicBlock getPreheader(Loop loop) {
+        List<BasicBlock> outside = getEnteringBlocks(loop);
+        if (outside.size() != 1 || !cfg.getSuccessors(outside.get(0)).equals(List.of(loop.header))) {
+            return null;
+        }
+        return outside.get(0);
+    }
+
+    // Blocks outside of the loop that branch to its header.
+    public List<BasicBlock> getEnteringBlocks(Loop loop) {
+        List<BasicBlock> outside = new ArrayList<>();
+        for (BasicBlock predecessor : cfg.getPredecessors(loop.header)) {
+            if (!loop.contains(predecessor)) {
+                outside.add(predecessor);
+            }
+        }
+        return outside;
+    }
+
+    // Blocks outside of the loop some block of the loop branches to.
+    public Set<BasicBlock> getExits(Loop loop) {
+        Set<BasicBlock> exits = new LinkedHashSet<>();
+        for (BasicBlock block : loop.blocks) {
+            for (BasicBlock successor : cfg.getSuccessors(block)) {
+                if (!loop.contains(successor)) {
+                    exits.add(successor);
+                }
+            }
+        }
+        return exits;
+    }
+
+    private void collectBlocks(Loop loop, Dominators dominators) {
+        loop.blocks.add(loop.header);
+
+        Deque<BasicBlock> work = new ArrayDeque<>(loop.latches);
+        while (!work.isEmpty()) {
+            BasicBlock block = work.pop();
+            if (!loop.blocks.add(block)) {
+                continue;
+            }
+            for (BasicBlock predecessor : cfg.getPredecessors(block)) {
+                if (dominators.isReachable(predecessor)) {
+                    work.push(predecessor);
+                }
+            }
+        }
+    }
+}
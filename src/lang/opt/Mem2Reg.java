@@ -0,0 +1,341 @@
+package lang.opt;
+
+import lang.ir.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static lang.ir.Operation.*;
+
+// Promotes locals kept in an ALLOC to values: phis are placed on the iterated dominance frontiers of
+// the stores and the loads are renamed by a walk of the dominator tree. Only scalars and pointers
+// whose address is used by nothing but their own loads and stores are promoted.
+public class Mem2Reg implements Pass {
+
+    private int phiCount;
+
+    @Override
+    public String getName() {
+        return "mem2reg";
+    }
+
+    @Override
+    public Change run(Function function, AnalysisManager analyses) {
+        DefUse defUse = analyses.get(DefUse.ANALYSIS, function);
+
+        Map<VariableValue, Command> slots = promotableSlots(function, defUse);
+        if (slots.isEmpty()) {
+            return Change.NONE;
+        }
+
+        Dominators dominators = analyses.get(Dominators.ANALYSIS, function);
+        Cfg cfg = analyses.get(Cfg.ANALYSIS, function);
+
+        Map<Command, VariableValue> phis = placePhis(slots, defUse, dominators);
+
+        rename(cfg.getEntry(), slots, phis, defUse, dominators);
+
+        // Loads in unreachable blocks read nothing that was stored, their phi edges bring nothing either.
+        for (BasicBlock block : function.getBlocks()) {
+            if (dominators.isReachable(block)) {
+                continue;
+            }
+            for (Command command : block.getCommands()) {
+                if (command.getOperation() == LOAD && slots.containsKey(slotOf(command.getParameters().get(0), defUse))) {
+                    defUse.replaceAllUsesWith(command.getResult(), new UndefValue(command.getResult().getType()));
+                }
+            }
+            for (BasicBlock target : block.getTerminator().getTargets()) {
+                for (Command phi : phisOf(target, phis)) {
+                    defUse.addIncoming(phi, new UndefValue(phi.getResult().getType()), block);
+                }
+            }
+        }
+
+        List<Command> promoted = new ArrayList<>();
+        for (Command alloc : slots.values()) {
+            promoted.add(alloc);
+            for (DefUse.Use use : defUse.getUses(alloc.getResult())) {
+                promoted.add(use.getCommand());
+            }
+        }
+        defUse.erase(promoted);
+
+        simplifyPhis(phis.keySet(), defUse);
+        removeDeadPhis(phis.keySet(), defUse);
+
+        return Change.COMMANDS;
+    }
+
+    // Slots with the ALLOC defining them, in the order they are allocated. A name allocated twice is
+    // left in memory.
+    private static Map<VariableValue, Command> promotableSlots(Function function, DefUse defUse) {
+        Map<VariableValue, Command> slots = new LinkedHashMap<>();
+        Set<String> allocated = new HashSet<>();
+        Set<String> repeated = new HashSet<>();
+
+        for (BasicBlock block : function.getBlocks()) {
+            for (Command command : block.getCommands()) {
+                if (command.getOperation() != ALLOC || !(command.getResult() instanceof VariableValue)) {
+                    continue;
+                }
+
+                VariableValue slot = (VariableValue) command.getResult();
+                if (!allocated.add(slot.getName())) {
+                    repeated.add(slot.getName());
+                } else if (!slot.isGlobal() && isScalar(slot.getType()) && isPromotable(slot, defUse)) {
+                    slots.put(slot, command);
+                }
+            }
+        }
+
+        slots.keySet().removeIf(slot -> repeated.contains(slot.getName()));
+        return slots;
+    }
+
+    private static boolean isPromotable(VariableValue slot, DefUse defUse) {
+        for (DefUse.Use use : defUse.getUses(slot)) {
+            Command command = use.getCommand();
+            if (command == null) {
+                return false;
+            }
+
+            boolean load = command.getOperation() == LOAD
+                    && use.getIndex() == 0
+                    && sameType(command.getResult().getType(), slot.getType());
+            boolean store = command.getOperation() == STORE
+                    && use.getIndex() == DefUse.Use.RESULT
+                    && command.getParameters().get(0) != null
+                    && sameType(command.getParameters().get(0).getType(), slot.getType());
+
+            if (!load && !store) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isScalar(Type type) {
+        return type instanceof PointerType || (type != null && type.getClass() == Type.class && type != Type.VOID);
+    }
+
+    private static boolean sameType(Type left, Type right) {
+        return left != null && right != null && left.toLLVM().equals(right.toLLVM());
+    }
+
+    // The slot a value names, the same object the ALLOC defines.
+    private static Value slotOf(Value value, DefUse defUse) {
+        Command definition = defUse.getDefinition(value);
+        return definition != null && definition.getOperation() == ALLOC ? definition.getResult() : null;
+    }
+
+    private Map<Command, VariableValue> placePhis(Map<VariableValue, Command> slots,
+                                                  DefUse defUse,
+                                                  Dominators dominators) {
+        Map<Command, VariableValue> phis = new LinkedHashMap<>();
+        Map<BasicBlock, Integer> placed = new HashMap<>();
+
+        for (VariableValue slot : slots.keySet()) {
+            Set<BasicBlock> definitions = new LinkedHashSet<>();
+            for (DefUse.Use use : defUse.getUses(slot)) {
+                if (use.getCommand().getOperation() == STORE && dominators.isReachable(use.getBlock())) {
+                    definitions.add(use.getBlock());
+                }
+            }
+
+            Set<BasicBlock> hasPhi = new HashSet<>();
+            Deque<BasicBlock> work = new ArrayDeque<>(definitions);
+
+            while (!work.isEmpty()) {
+                for (BasicBlock frontier : dominators.getFrontier(work.pop())) {
+                    if (!hasPhi.add(frontier)) {
+                        continue;
+                    }
+
+                    Command phi = new Command(
+                            new VariableValue("$$_phi_" + phiCount++, slot.getType()),
+                            PHI,
+                            List.of());
+                    defUse.insert(frontier, placed.merge(frontier, 1, Integer::sum) - 1, phi);
+                    phis.put(phi, slot);
+
+                    if (!definitions.contains(frontier)) {
+                        work.push(frontier);
+                    }
+                }
+            }
+        }
+
+        return phis;
+    }
+
+    private static List<Command> phisOf(BasicBlock block, Map<Command, VariableValue> phis) {
+        List<Command> result = new ArrayList<>();
+        for (Command command : block.getCommands()) {
+            if (command.getOperation() != PHI) {
+                break;
+            }
+            if (phis.containsKey(command)) {
+                result.add(command);
+            }
+        }
+        return result;
+    }
+
+    // Iterative walk of the dominator tree keeping the current value of every slot on a stack. A
+    // load is replaced as soon as it is met, so values stored later are already renamed.
+    private static void rename(BasicBlock entry,
+                               Map<VariableValue, Command> slots,
+                               Map<Command, VariableValue> phis,
+                               DefUse defUse,
+                               Dominators dominators) {
+        Map<Value, Deque<Value>> values = new HashMap<>();
+        for (VariableValue slot : slots.keySet()) {
+            values.put(slot, new ArrayDeque<>());
+        }
+
+        Deque<Iterator<BasicBlock>> path = new ArrayDeque<>();
+        Deque<List<Value>> pushed = new ArrayDeque<>();
+
+        pushed.push(renameBlock(entry, phis, defUse, values));
+        path.push(dominators.getChildren(entry).iterator());
+
+        while (!path.isEmpty()) {
+            Iterator<BasicBlock> next = path.peek();
+            if (next.hasNext()) {
+                BasicBlock child = next.next();
+                pushed.push(renameBlock(child, phis, defUse, values));
+                path.push(dominators.getChildren(child).iterator());
+            } else {
+                path.pop();
+                for (Value slot : pushed.pop()) {
+                    values.get(slot).pop();
+                }
+            }
+        }
+    }
+
+    private static List<Value> renameBlock(BasicBlock block,
+                                           Map<Command, VariableValue> phis,
+                                           DefUse defUse,
+                                           Map<Value, Deque<Value>> values) {
+        List<Value> pushed = new ArrayList<>();
+
+        for (Command command : block.getCommands()) {
+            if (command.getOperation() == PHI && phis.containsKey(command)) {
+                VariableValue slot = phis.get(command);
+                values.get(slot).push(command.getResult());
+                pushed.add(slot);
+            } else if (command.getOperation() == LOAD) {
+                Value slot = slotOf(command.getParameters().get(0), defUse);
+                if (values.containsKey(slot)) {
+                    defUse.replaceAllUsesWith(command.getResult(), current(slot, values));
+                }
+            } else if (command.getOperation() == STORE) {
+                Value slot = slotOf(command.getResult(), defUse);
+                if (values.containsKey(slot)) {
+                    values.get(slot).push(command.getParameters().get(0));
+                    pushed.add(slot);
+                }
+            }
+        }
+
+        for (BasicBlock target : block.getTerminator().getTargets()) {
+            for (Command phi : phisOf(target, phis)) {
+                defUse.addIncoming(phi, current(phis.get(phi), values), block);
+            }
+        }
+
+        return pushed;
+    }
+
+    private static Value current(Value slot, Map<Value, Deque<Value>> values) {
+        Value value = values.get(slot).peek();
+        return value != null ? value : new UndefValue(slot.getType());
+    }
+
+    // A phi whose parameters are all one value besides itself is that value.
+    private static void simplifyPhis(Set<Command> phis, DefUse defUse) {
+        Deque<Command> work = new ArrayDeque<>(phis);
+        Set<Command> erased = new HashSet<>();
+
+        while (!work.isEmpty()) {
+            Command phi = work.pop();
+            if (erased.contains(phi)) {
+                continue;
+            }
+
+            Value same = null;
+            boolean unique = true;
+            for (Value parameter : phi.getParameters()) {
+                if (parameter == phi.getResult() || parameter == same) {
+                    continue;
+                }
+                if (same != null) {
+                    unique = false;
+                    break;
+                }
+                same = parameter;
+            }
+            if (!unique) {
+                continue;
+            }
+
+            // The phis reading this one may become trivial in turn.
+            for (DefUse.Use use : defUse.getUses(phi.getResult())) {
+                if (use.getCommand() != null && use.getCommand() != phi && phis.contains(use.getCommand())) {
+                    work.push(use.getCommand());
+                }
+            }
+
+            defUse.replaceAllUsesWith(phi.getResult(), same != null ? same : new UndefValue(phi.getResult().getType()));
+            defUse.erase(phi);
+            erased.add(phi);
+        }
+
+        phis.removeAll(erased);
+    }
+
+    // Phis nothing reads any more, removing one may leave the phis it read unused.
+    private static void removeDeadPhis(Set<Command> phis, DefUse defUse) {
+        Deque<Command> work = new ArrayDeque<>(phis);
+        Set<Command> erased = new HashSet<>();
+
+        while (!work.isEmpty()) {
+            Command phi = work.pop();
+            if (erased.contains(phi) || !onlyUsedByItself(phi, defUse)) {
+                continue;
+            }
+
+            for (Value parameter : phi.getParameters()) {
+                Command definition = defUse.getDefinition(parameter);
+                if (definition != null && definition != phi && phis.contains(definition)) {
+                    work.push(definition);
+                }
+            }
+
+            defUse.erase(phi);
+            erased.add(phi);
+        }
+
+        phis.removeAll(erased);
+    }
+
+    private static boolean onlyUsedByItself(Command phi, DefUse defUse) {
+        for (DefUse.Use use : defUse.getUses(phi.getResult())) {
+            if (use.getCommand() != phi) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
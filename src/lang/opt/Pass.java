@@ -0,0 +1,21 @@
+package lang.opt;
+
+import lang.ir.Function;
+
+// A transformation of one function. Analyses are taken from the manager, which computes each of them
+// once and keeps it until a pass reports a change it depends on.
+public interface Pass {
+
+    enum Change {
+        // Nothing was changed, every analysis is kept.
+        NONE,
+        // Commands were changed, analyses of the blocks and their edges are kept.
+        COMMANDS,
+        // Blocks or edges were changed, no analysis is kept.
+        BLOCKS
+    }
+
+    String getName();
+
+    Change run(Function function, AnalysisManager analyses);
+}
@@ -0,0 +1,69 @@
+package lang.opt;
+
+import lang.ir.Function;
+import lang.ir.Module;
+import lang.stats.Stats;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Runs passes in order over every function of a module. The time of a pass over the whole module and
+// of every analysis it caused to be computed is recorded in the stats.
+public class PassManager {
+
+    public static final String PHASE = "optimize";
+
+    private final Stats stats;
+    private final List<Pass> passes;
+
+    public PassManager(Stats stats) {
+        this.stats = stats;
+        this.passes = new ArrayList<>();
+    }
+
+    // Pipelines of -O0 to -O3, -O0 leaves the module as it is. -O2 and -O3 run the passes of -O1
+    // until there are passes of their own; LoopSimplify is left out until a loop pass uses the
+    // preheaders it makes.
+    public static PassManager forLevel(int level, Stats stats) {
+        if (level < 0 || level > 3) {
+            throw new IllegalArgumentException("Wrong optimization level " + level);
+        }
+
+        PassManager passManager = new PassManager(stats);
+        if (level >= 1) {
+            passManager.add(new RemoveEmptyBlocks());
+            passManager.add(new Mem2Reg());
+            passManager.add(new Sccp());
+            passManager.add(new RemoveEmptyBlocks());
+        }
+        return passManager;
+    }
+
+    public PassManager add(Pass pass) {
+        passes.add(pass);
+        return this;
+    }
+
+    public List<Pass> getPasses() {
+        return passes;
+    }
+
+    public void run(Module module) {
+        AnalysisManager analyses = new AnalysisManager(stats);
+
+        for (Pass pass : passes) {
+            try (Stats.Span span = stats.pass(PHASE, pass.getName())) {
+                for (Function function : module.getFunctions()) {
+                    if (function.isSystemFunction()) {
+                        continue;
+                    }
+                    Pass.Change change = pass.run(function, analyses);
+                    if (change != Pass.Change.NONE) {
+                        function.renumberLocals();
+                    }
+                    analyses.invalidate(function, change);
+                }
+            }
+        }
+    }
+}
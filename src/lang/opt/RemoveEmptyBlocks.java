@@ -0,0 +1,96 @@
+package lang.opt;
+
+import lang.ir.BasicBlock;
+import lang.ir.Branch;
+import lang.ir.ConditionalBranch;
+import lang.ir.Function;
+import lang.ir.Operation;
+import lang.ir.Terminator;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+// Blocks without commands that only branch on are removed and their predecessors branch straight to
+// where the chain of such blocks ends. The entry block stays.
+public class RemoveEmptyBlocks implements Pass {
+
+    @Override
+    public String getName() {
+        return "remove-empty-blocks";
+    }
+
+    @Override
+    public Change run(Function function, AnalysisManager analyses) {
+        Cfg cfg = analyses.get(Cfg.ANALYSIS, function);
+
+        Map<BasicBlock, BasicBlock> forwards = new HashMap<>();
+        for (BasicBlock block : function.getBlocks()) {
+            if (block != cfg.getEntry() && isEmpty(block)) {
+                forwards.put(block, ((Branch) block.getTerminator()).getTarget());
+            }
+        }
+
+        // A loop of empty blocks has nowhere to forward to, it is left as it is.
+        Map<BasicBlock, BasicBlock> targets = new HashMap<>();
+        for (BasicBlock block : forwards.keySet()) {
+            BasicBlock target = resolve(block, forwards);
+            if (target != null) {
+                targets.put(block, target);
+            }
+        }
+
+        if (targets.isEmpty()) {
+            return Change.NONE;
+        }
+
+        for (BasicBlock block : function.getBlocks()) {
+            if (!targets.containsKey(block)) {
+                retarget(block, targets);
+            }
+        }
+        function.getBlocks().removeIf(targets::containsKey);
+        function.updateEdges();
+
+        return Change.BLOCKS;
+    }
+
+    // Phis of the target name the block as a predecessor, such a block stays.
+    private static boolean isEmpty(BasicBlock block) {
+        if (!block.getCommands().isEmpty() || !(block.getTerminator() instanceof Branch)) {
+            return false;
+        }
+
+        BasicBlock target = ((Branch) block.getTerminator()).getTarget();
+        return target != block
+                && target.getCommands().stream().noneMatch(command -> command.getOperation() == Operation.PHI);
+    }
+
+    private static BasicBlock resolve(BasicBlock block, Map<BasicBlock, BasicBlock> forwards) {
+        Set<BasicBlock> seen = new HashSet<>();
+        BasicBlock target = block;
+        while (forwards.containsKey(target)) {
+            if (!seen.add(target)) {
+                return null;
+            }
+            target = forwards.get(target);
+        }
+        return target;
+    }
+
+    private static void retarget(BasicBlock block, Map<BasicBlock, BasicBlock> targets) {
+        Terminator terminator = block.getTerminator();
+
+        if (terminator instanceof Branch) {
+            BasicBlock target = ((Branch) terminator).getTarget();
+            if (targets.containsKey(target)) {
+                block.setTerminator(new Branch(targets.get(target)));
+            }
+        } else if (terminator instanceof ConditionalBranch) {
+            ConditionalBranch conditionalBranch = (ConditionalBranch) terminator;
+            conditionalBranch.setLeft(targets.getOrDefault(conditionalBranch.getLeft(), conditionalBranch.getLeft()));
+            conditionalBranch.setRight(targets.getOrDefault(conditionalBranch.getRight(), conditionalBranch.getRight()));
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package lang.opt;
+
+import lang.ir.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static lang.ir.Operation.*;
+
+// Sparse conditional constant propagation. Values start unknown and only go down to a constant and
+// then to overdefined, while blocks and edges become executable as branches are proved to take them,
+// so a phi only meets the values coming over executable edges. Afterwards constant results replace
+// their commands, branches on constants become jumps and blocks never executed are deleted.
+//
+// Integers are kept sign extended to 64 bits whatever their width, i1 true is -1.
+// Loads are overdefined, globals included even where no function stores to them: the pass sees
+// one function at a time.
+public class Sccp implements Pass {
+
+    private static final State UNKNOWN = new State(0);
+    private static final State OVERDEFINED = new State(0);
+
+    private static final class State {
+        private final long value;
+
+        private State(long value) {
+            this.value = value;
+        }
+
+        private boolean isConstant() {
+            return this != UNKNOWN && this != OVERDEFINED;
+        }
+    }
+
+    private Function function;
+    private DefUse defUse;
+    private Map<Object, State> states;
+    private Set<BasicBlock> executable;
+    private Map<BasicBlock, Set<BasicBlock>> executableEdges;
+    private Deque<BasicBlock> blockWork;
+    private Deque<Value> valueWork;
+
+    @Override
+    public String getName() {
+        return "sccp";
+    }
+
+    @Override
+    public Change run(Function function, AnalysisManager analyses) {
+        this.function = function;
+        this.defUse = analyses.get(DefUse.ANALYSIS, function);
+        this.states = new HashMap<>();
+        this.executable = new HashSet<>();
+        this.executableEdges = new HashMap<>();
+        this.blockWork = new ArrayDeque<>();
+        this.valueWork = new ArrayDeque<>();
+
+        solve(analyses.get(Cfg.ANALYSIS, function).getEntry());
+
+        boolean folded = foldCommands();
+        boolean blocksChanged = foldBranches();
+        blocksChanged |= removeUnreachable();
+
+        if (blocksChanged) {
+            function.updateEdges();
+            return Change.BLOCKS;
+        }
+        return folded ? Change.COMMANDS : Change.NONE;
+    }
+
+    private void solve(BasicBlock entry) {
+        executable.add(entry);
+        blockWork.add(entry);
+
+        while (!blockWork.isEmpty() || !valueWork.isEmpty()) {
+            while (!valueWork.isEmpty()) {
+                for (DefUse.Use use : defUse.getUses(valueWork.pop())) {
+                    if (!executable.contains(use.getBlock())) {
+                        continue;
+                    }
+                    if (use.getCommand() == null) {
+                        visitTerminator(use.getBlock());
+                    } else {
+                        visit(use.getBlock(), use.getCommand());
+                    }
+                }
+            }
+
+            if (!blockWork.isEmpty()) {
+                BasicBlock block = blockWork.pop();
+                for (Command command : block.getCommands()) {
+                    visit(block, command);
+                }
+                visitTerminator(block);
+            }
+        }
+    }
+
+    private void visit(BasicBlock block, Command command) {
+        if (!command.definesResult()) {
+            return;
+        }
+
+        State state = command.getOperation() == PHI ? meetIncoming(block, command) : evaluate(command);
+        State old = state(command.getResult());
+        if (state == old || old == OVERDEFINED || (old.isConstant() && state.isConstant() && old.value == state.value)) {
+            return;
+        }
+
+        states.put(key(command.getResult()), old == UNKNOWN ? state : OVERDEFINED);
+        valueWork.push(command.getResult());
+    }
+
+    private State meetIncoming(BasicBlock block, Command phi) {
+        State result = UNKNOWN;
+        for (int i = 0; i < phi.getParameters().size(); i++) {
+            if (!executableEdges.getOrDefault(phi.getBlocks().get(i), Set.of()).contains(block)) {
+                continue;
+            }
+
+            State state = state(phi.getParameters().get(i));
+            if (result == UNKNOWN) {
+                result = state;
+            } else if (state != UNKNOWN && (!state.isConstant() || !result.isConstant() || state.value != result.value)) {
+                return OVERDEFINED;
+            }
+        }
+        return result;
+    }
+
+    private void visitTerminator(BasicBlock block) {
+        Terminator terminator = block.getTerminator();
+        if (terminator instanceof ConditionalBranch) {
+            ConditionalBranch branch = (ConditionalBranch) terminator;
+            State condition = state(branch.getValue());
+            if (condition == OVERDEFINED) {
+                markEdge(block, branch.getLeft());
+                markEdge(block, branch.getRight());
+            } else if (condition.isConstant()) {
+                markEdge(block, condition.value != 0 ? branch.getLeft() : branch.getRight());
+            }
+        } else {
+            for (BasicBlock target : terminator.getTargets()) {
+                markEdge(block, target);
+            }
+        }
+    }
+
+    private void markEdge(BasicBlock from, BasicBlock to) {
+        if (!executableEdges.computeIfAbsent(from, (k) -> new HashSet<>()).add(to)) {
+            return;
+        }
+
+        if (executable.add(to)) {
+            blockWork.add(to);
+            return;
+        }
+
+        // The block was visited already, only its phis see the new edge.
+        for (Command command : to.getCommands()) {
+            if (command.getOperation() != PHI) {
+                break;
+            }
+            visit(to, command);
+        }
+    }
+
+    private State evaluate(Command command) {
+        Operation operation = command.getOperation();
+        List<Value> parameters = command.getParameters();
+        int width = width(command.getResult().getType());
+
+        boolean binary = operation == ADD || operation == SUB || operation == MUL || operation == DIV
+                || operation == MOD || operation == AND || operation == OR;
+        boolean comparison = operation == GT || operation == GE || operation == LT || operation == LE
+                || operation == EQ || operation == NE;
+        boolean conversion = operation == CAST || operation == TRUNC || operation == SEXT;
+
+        if ((!binary && !comparison && !conversion) || width == 0) {
+            return OVERDEFINED;
+        }
+
+        List<State> operands = new ArrayList<>();
+        for (Value parameter : parameters) {
+            State state = state(parameter);
+            if (state == OVERDEFINED) {
+                return OVERDEFINED;
+            }
+            operands.add(state);
+        }
+        if (operands.contains(UNKNOWN)) {
+            return UNKNOWN;
+        }
+
+        long left = operands.get(0).value;
+        if (conversion) {
+            int from = width(parameters.get(0).getType());
+            if (from == 0 || (operation == CAST && from != width)) {
+                return OVERDEFINED;
+            }
+            return new State(normalize(left, width));
+        }
+
+        long right = operands.get(1).value;
+        if (comparison) {
+            return new State(normalize(compare(operation, left, right) ? 1 : 0, width));
+        }
+
+        switch (operation) {
+            case ADD:
+                return new State(normalize(left + right, width));
+            case SUB:
+                return new State(normalize(left - right, width));
+            case MUL:
+                return new State(normalize(left * right, width));
+            case AND:
+                return new State(left & right);
+            case OR:
+                return new State(left | right);
+            default:
+                // Division by zero and the overflowing division are undefined, they are left to run.
+                if (right == 0 || (right == -1 && left == normalize(1L << (width - 1), width))) {
+                    return OVERDEFINED;
+                }
+                return new State(operation == DIV ? left / right : left % right);
+        }
+    }
+
+    private static boolean compare(Operation operation, long left, long right) {
+        switch (operation) {
+            case GT:
+                return left > right;
+            case GE:
+                return left >= right;
+            case LT:
+                return left < right;
+            case LE:
+                return left <= right;
+            case EQ:
+                return left == right;
+            default:
+                return left != right;
+        }
+    }
+
+    private State state(Value value) {
+        if (value instanceof IntValue) {
+            return new State(((IntValue) value).getValue());
+        } else if (value instanceof LongValue) {
+            return new State(((LongValue) value).getValue());
+        } else if (value instanceof BoolValue) {
+            return new State(((BoolValue) value).getValue() ? -1 : 0);
+        } else if (value instanceof CharValue) {
+            return new State((byte) ((CharValue) value).getValue());
+        }
+
+        Object key = key(value);
+        if (key == null || defUse.getDefinition(value) == null) {
+            return OVERDEFINED;
+        }
+        return states.getOrDefault(key, UNKNOWN);
+    }
+
+    // Commands with a constant result are replaced by the constant. An i8 that does not fit the
+    // characters and an i16 have no constant to print, their commands stay.
+    private boolean foldCommands() {
+        List<Command> folded = new ArrayList<>();
+        for (BasicBlock block : function.getBlocks()) {
+            if (!executable.contains(block)) {
+                continue;
+            }
+            for (Command command : block.getCommands()) {
+                if (!command.definesResult()) {
+                    continue;
+                }
+                State state = state(command.getResult());
+                Value constant = state.isConstant() ? constant(state.value, command.getResult().getType()) : null;
+                if (constant != null) {
+                    defUse.replaceAllUsesWith(command.getResult(), constant);
+                    folded.add(command);
+                }
+            }
+        }
+
+        defUse.erase(folded);
+        return !folded.isEmpty();
+    }
+
+    private boolean foldBranches() {
+        boolean changed = false;
+        for (BasicBlock block : function.getBlocks()) {
+            if (!executable.contains(block) || !(block.getTerminator() instanceof ConditionalBranch)) {
+                continue;
+            }
+
+            ConditionalBranch branch = (ConditionalBranch) block.getTerminator();
+            State condition = state(branch.getValue());
+            if (!condition.isConstant()) {
+                continue;
+            }
+
+            BasicBlock taken = condition.value != 0 ? branch.getLeft() : branch.getRight();
+            BasicBlock dropped = taken == branch.getLeft() ? branch.getRight() : branch.getLeft();
+            if (dropped != taken) {
+                for (Command phi : phisOf(dropped)) {
+                    defUse.removeIncoming(phi, block);
+                }
+            }
+            defUse.setTerminator(block, new Branch(taken));
+            changed = true;
+        }
+        return changed;
+    }
+
+    private boolean removeUnreachable() {
+        Set<BasicBlock> unreachable = new LinkedHashSet<>();
+        for (BasicBlock block : function.getBlocks()) {
+            if (!executable.contains(block)) {
+                unreachable.add(block);
+            }
+        }
+        if (unreachable.isEmpty()) {
+            return false;
+        }
+
+        for (BasicBlock block : function.getBlocks()) {
+            if (unreachable.contains(block)) {
+                continue;
+            }
+            for (Command phi : phisOf(block)) {
+                for (BasicBlock predecessor : new ArrayList<>(phi.getBlocks())) {
+                    if (unreachable.contains(predecessor)) {
+                        defUse.removeIncoming(phi, predecessor);
+                    }
+                }
+            }
+        }
+
+        // Values of unreachable blocks can only be read in unreachable blocks, they go together. The
+        // index is left behind, the change of blocks drops it.
+        function.getBlocks().removeAll(unreachable);
+        return true;
+    }
+
+    private static List<Command> phisOf(BasicBlock block) {
+        List<Command> phis = new ArrayList<>();
+        for (Command command : block.getCommands()) {
+            if (command.getOperation() != PHI) {
+                break;
+            }
+            phis.add(command);
+        }
+        return phis;
+    }
+
+    private static Value constant(long value, Type type) {
+        if (type == Type.INT_1) {
+            return new BoolValue(value != 0);
+        } else if (type == Type.INT_8 && value >= 0) {
+            return new CharValue((char) value);
+        } else if (type == Type.INT_32) {
+            return new IntValue((int) value);
+        } else if (type == Type.INT_64) {
+            return new LongValue(value);
+        }
+        return null;
+    }
+
+    private static int width(Type type) {
+        if (type == Type.INT_1) {
+            return 1;
+        } else if (type == Type.INT_8) {
+            return 8;
+        } else if (type == Type.INT_16) {
+            return 16;
+        } else if (type == Type.INT_32) {
+            return 32;
+        } else if (type == Type.INT_64) {
+            return 64;
+        }
+        return 0;
+    }
+
+    private static long normalize(long value, int width) {
+        return value << (64 - width) >> (64 - width);
+    }
+
+    // Named variables are told apart by name like in DefUse.
+    private static Object key(Value value) {
+        if (value instanceof VariableValue) {
+            return value.toLLVM();
+        } else if (value instanceof LocalVariableValue) {
+            return value;
+        }
+        return null;
+    }
+}
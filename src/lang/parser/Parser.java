@@ -12,51 +12,50 @@ import lang.ast.expression.unary.prefix.PrefixIncrementMultiplicativeExpressionN
 import lang.ast.statement.*;
 import lang.lexer.Lexer;
 import lang.lexer.Token;
+import lang.lexer.TokenBuffer;
 
 import java.util.*;
 
 import static lang.lexer.Token.TokenType.*;
 
 public class Parser {
+    // Tokens kept behind the current one. Backtracking only goes back to the start of the current
+    // line (indentation, IDENT ([ ])* IDENT lookahead), far less than this.
+    private static final int LOOKAHEAD = 256;
+
     private final Lexer lexer;
-    private final Queue<Token> stack = new ArrayDeque<>();
-    private final Stack<Token> tokens;
+    private final TokenBuffer tokens;
     private final String path;
     private final String pack;
-    private Token lastToken = null;
+    private int position;
 
     public Parser(Lexer lexer, String path, String pack) {
         this.lexer = lexer;
-        this.tokens = new Stack<>();
+        this.tokens = new TokenBuffer(LOOKAHEAD);
         this.path = path;
         this.pack = pack;
-
-
-        while (true) {
-            Token token = lexer.nextToken();
-
-            tokens.add(token);
-            if (token.getTokenType() == Token.TokenType.EOF) {
-                break;
-            }
-        }
-
-        List<Token> rev = new ArrayList<>(tokens);
-        Collections.reverse(rev);
-        tokens.addAll(rev);
+        this.position = 0;
     }
 
-    private Token next() {
-        lastToken = tokens.pop();
-        return lastToken;
+    // EOF is the last token and is returned again when a statement consumes past the end of the file
+    private int next() {
+        int index = position;
+        if (peek() != EOF) {
+            position++;
+        }
+        return index;
     }
 
-    private Token peek() {
-        return tokens.peek();
+    // Tokens are pulled from the lexer only when the parser reaches them
+    private Token.TokenType peek() {
+        while (tokens.size() <= position) {
+            lexer.nextToken(tokens);
+        }
+        return tokens.getType(position);
     }
 
-    private void ret(Token token) {
-        tokens.push(token);
+    private void ret(int mark) {
+        position = mark;
     }
 
     public FileNode parse() {
@@ -64,11 +63,11 @@ public class Parser {
         List<StatementNode> statementNodes = new ArrayList<>();
 
         while (true) {
-            if (peek().getTokenType() == EOF) {
+            if (peek() == EOF) {
                 break;
             }
 
-            if (peek().getTokenType() == IMPORT) {
+            if (peek() == IMPORT) {
                 importNodes.add(parseImportNode());
             } else {
                 statementNodes.add(parseGlobalStatement());
@@ -94,33 +93,26 @@ public class Parser {
 
         while (true) {
             int count = currentTab;
-            Stack<Token> tokens = new Stack<>();
+            int mark = position;
 
-            if (peek().getTokenType() == Token.TokenType.NEWLINE) {
+            if (peek() == Token.TokenType.NEWLINE) {
                 next();
                 statementNodes.add(new EmptyStatementNode());
             } else {
                 while (count > 0) {
-                    Token token = peek();
-
-                    if (token.getTokenType() != Token.TokenType.TAB) {
+                    if (peek() != Token.TokenType.TAB) {
                         break;
                     }
-                    tokens.push(token);
-                    token = next();
+                    next();
                     count--;
                 }
 
                 if (count > 0) {
-                    while (!tokens.isEmpty()) {
-                        ret(tokens.pop());
-                    }
+                    ret(mark);
                     break;
-                } else {
-                    tokens.clear();
                 }
 
-                if (peek().getTokenType() == Token.TokenType.EOF) {
+                if (peek() == Token.TokenType.EOF) {
                     break;
                 }
 
@@ -133,29 +125,28 @@ public class Parser {
 
     // ST ::= (STATEMENT | IMPORT)
     public StatementNode parseGlobalStatement() {
-        Token first = peek();
-        if (first.getTokenType() == Token.TokenType.NEWLINE) {
+        Token.TokenType first = peek();
+        if (first == Token.TokenType.NEWLINE) {
             next();
             return parseGlobalStatement();
-        } else if (first.getTokenType() == Token.TokenType.CLASS) {
+        } else if (first == Token.TokenType.CLASS) {
             return parseClassStatement();
-        } else if (first.getTokenType() == Token.TokenType.INTERFACE) {
+        } else if (first == Token.TokenType.INTERFACE) {
             return parseInterfaceStatement();
-        } else if (first.getTokenType() == Token.TokenType.INT
-                || first.getTokenType() == Token.TokenType.LONG
-                || first.getTokenType() == Token.TokenType.FLOAT
-                || first.getTokenType() == CHAR
-                || first.getTokenType() == Token.TokenType.L_PAREN) {
+        } else if (first == Token.TokenType.INT
+                || first == Token.TokenType.LONG
+                || first == Token.TokenType.FLOAT
+                || first == CHAR
+                || first == Token.TokenType.L_PAREN) {
             return parseDeclarationStatement();
         } else {
-            if (first.getTokenType() == Token.TokenType.IDENTIFIER) {
-                next();
-                Token token = peek();
-                if (token.getTokenType() == Token.TokenType.IDENTIFIER) {
-                    ret(first);
+            if (first == Token.TokenType.IDENTIFIER) {
+                int mark = next();
+                if (peek() == Token.TokenType.IDENTIFIER) {
+                    ret(mark);
                     return parseDeclarationStatement();
                 }
-                ret(first);
+                ret(mark);
             }
             throw new IllegalArgumentException();
         }
@@ -163,70 +154,60 @@ public class Parser {
 
     // ST ::= (STATEMENT | IMPORT)
     public StatementNode parseStatement() {
-        Token first = peek();
+        Token.TokenType first = peek();
 
-        if (first.getTokenType() == Token.TokenType.NEWLINE) {
+        if (first == Token.TokenType.NEWLINE) {
             next();
             return parseStatement();
-        } else if (first.getTokenType() == Token.TokenType.IF) {
+        } else if (first == Token.TokenType.IF) {
             return parseIfStatement();
-        } else if (first.getTokenType() == Token.TokenType.ELSE) {
+        } else if (first == Token.TokenType.ELSE) {
             return parseElseStatement();
-        } else if (first.getTokenType() == Token.TokenType.ELIF) {
+        } else if (first == Token.TokenType.ELIF) {
             return parseElifStatement();
-        } else if (first.getTokenType() == Token.TokenType.TAB) {
+        } else if (first == Token.TokenType.TAB) {
             return parseCompoundStatement();
-        } else if (first.getTokenType() == Token.TokenType.WHILE) {
+        } else if (first == Token.TokenType.WHILE) {
             return parseWhileStatement();
-        } else if (first.getTokenType() == Token.TokenType.RETURN) {
+        } else if (first == Token.TokenType.RETURN) {
             return parseReturnStatement();
-        } else if (first.getTokenType() == Token.TokenType.BREAK) {
+        } else if (first == Token.TokenType.BREAK) {
             return parseBreakStatement();
-        } else if (first.getTokenType() == Token.TokenType.CLASS) {
+        } else if (first == Token.TokenType.CLASS) {
             return parseClassStatement();
-        } else if (first.getTokenType() == Token.TokenType.INTERFACE) {
+        } else if (first == Token.TokenType.INTERFACE) {
             return parseInterfaceStatement();
-        } else if (first.getTokenType() == Token.TokenType.CONTINUE) {
+        } else if (first == Token.TokenType.CONTINUE) {
             return parseContinueStatement();
-        } else if (first.getTokenType() == Token.TokenType.INT
-                || first.getTokenType() == Token.TokenType.LONG
-                || first.getTokenType() == Token.TokenType.FLOAT
-                || first.getTokenType() == CHAR
-                || first.getTokenType() == Token.TokenType.L_PAREN) {
+        } else if (first == Token.TokenType.INT
+                || first == Token.TokenType.LONG
+                || first == Token.TokenType.FLOAT
+                || first == CHAR
+                || first == Token.TokenType.L_PAREN) {
             return parseDeclarationStatement();
         } else {
-            if (first.getTokenType() == Token.TokenType.IDENTIFIER) {
-                next();
-                Token token = peek();
-                List<Token> retStack = new ArrayList<>();
+            if (first == Token.TokenType.IDENTIFIER) {
+                int mark = next();
                 boolean flag = true;
-                retStack.add(first);
 
                 while (true) {
-                    if (peek().getTokenType() == Token.TokenType.LB_PAREN) {
-                        retStack.add(token);
+                    if (peek() == Token.TokenType.LB_PAREN) {
                         next();
-                        token = peek();
 
-                        if (token.getTokenType() != RB_PAREN) {
+                        if (peek() != RB_PAREN) {
                             flag = false;
                             break;
                         }
 
-                        retStack.add(token);
                         next();
-                        token = peek();
                     } else {
                         break;
                     }
                 }
 
-                flag &= token.getTokenType() == Token.TokenType.IDENTIFIER;
+                flag &= peek() == Token.TokenType.IDENTIFIER;
 
-                Collections.reverse(retStack);
-                for (Token tkn : retStack) {
-                    ret(tkn);
-                }
+                ret(mark);
 
                 if (flag) {
                     return parseDeclarationStatement();
@@ -243,33 +224,26 @@ public class Parser {
         List<StatementNode> statementNodes = new ArrayList<>();
         while (true) {
             int count = currentTab;
-            Stack<Token> tokens = new Stack<>();
+            int mark = position;
 
-            if (peek().getTokenType() == Token.TokenType.NEWLINE) {
+            if (peek() == Token.TokenType.NEWLINE) {
                 next();
                 statementNodes.add(new EmptyStatementNode());
             } else {
                 while (count > 0) {
-                    Token token = peek();
-
-                    if (token.getTokenType() != Token.TokenType.TAB) {
+                    if (peek() != Token.TokenType.TAB) {
                         break;
                     }
-                    tokens.push(token);
-                    token = next();
+                    next();
                     count--;
                 }
 
                 if (count > 0) {
-                    while (!tokens.isEmpty()) {
-                        ret(tokens.pop());
-                    }
+                    ret(mark);
                     break;
-                } else {
-                    tokens.clear();
                 }
 
-                if (peek().getTokenType() == Token.TokenType.EOF) {
+                if (peek() == Token.TokenType.EOF) {
                     break;
                 }
 
@@ -292,9 +266,9 @@ public class Parser {
         AssigmentExpressionNode current = null;
 
         while (true) {
-            Token token = peek();
+            Token.TokenType token = peek();
 
-            if (token.getTokenType() == Token.TokenType.DEFINE) {
+            if (token == Token.TokenType.DEFINE) {
                 next();
                 if (current == null) {
                     current = new AssigmentExpressionNode(first, parseConditionalExpression());
@@ -314,13 +288,13 @@ public class Parser {
         IdentifierNode identifierNode = parseIdentifier();
 
         List<IdentifierNode> identifierNodes = new ArrayList<>();
-        if (peek().getTokenType() == COLON) {
+        if (peek() == COLON) {
             next();
 
             IdentifierNode node = parseIdentifier();
             identifierNodes.add(node);
             while (true) {
-                if (peek().getTokenType() == COMMA) {
+                if (peek() == COMMA) {
                     next();
                     node = parseIdentifier();
                     identifierNodes.add(node);
@@ -330,7 +304,7 @@ public class Parser {
             }
         }
 
-        need(Token.TokenType.NEWLINE, peek());
+        need(Token.TokenType.NEWLINE);
         next();
         currentTab++;
         TranslationNode translationNode = parseTranslationNode();
@@ -343,13 +317,13 @@ public class Parser {
         IdentifierNode identifierNode = parseIdentifier();
 
         List<IdentifierNode> identifierNodes = new ArrayList<>();
-        if (peek().getTokenType() == COLON) {
+        if (peek() == COLON) {
             next();
 
             IdentifierNode node = parseIdentifier();
             identifierNodes.add(node);
             while (true) {
-                if (peek().getTokenType() == COMMA) {
+                if (peek() == COMMA) {
                     next();
                     node = parseIdentifier();
                     identifierNodes.add(node);
@@ -359,7 +333,7 @@ public class Parser {
             }
         }
 
-        need(Token.TokenType.NEWLINE, peek());
+        need(Token.TokenType.NEWLINE);
         next();
         currentTab++;
         TranslationNode translationNode = parseTranslationNode();
@@ -370,8 +344,8 @@ public class Parser {
     private StatementNode parseDeclarationStatement() {
         TypeNode typeNode = parseType();
 
-        if (typeNode instanceof FunctionNode && peek().getTokenType() == Token.TokenType.ARROW) {
-            Token token = next();
+        if (typeNode instanceof FunctionNode && peek() == Token.TokenType.ARROW) {
+            next();
             next();
             currentTab++;
             StatementNode statement = parseStatement();
@@ -383,10 +357,10 @@ public class Parser {
 
         ExpressionNode expressionNode = null;
         if (typeNode instanceof FunctionNode) {
-            if (peek().getTokenType() == Token.TokenType.ARROW) {
+            if (peek() == Token.TokenType.ARROW) {
                 next();
-                Token token = peek();
-                if (token.getTokenType() == Token.TokenType.NEWLINE) {
+                Token.TokenType token = peek();
+                if (token == Token.TokenType.NEWLINE) {
                     next();
                     currentTab++;
                     StatementNode statement = parseStatement();
@@ -396,19 +370,19 @@ public class Parser {
                     StatementNode statement = parseStatement();
                     return new FunctionDefinitionNode((FunctionNode) typeNode, identifierNode, statement);
                 }
-            } else if (peek().getTokenType() == Token.TokenType.DEFINE) {
+            } else if (peek() == Token.TokenType.DEFINE) {
                 next();
                 expressionNode = parseExpression();
             } else {
                 next();
                 return new FunctionDefinitionNode((FunctionNode) typeNode, identifierNode, null);
             }
-        } else if (peek().getTokenType() == Token.TokenType.DEFINE) {
-            Token token = next();
+        } else if (peek() == Token.TokenType.DEFINE) {
+            next();
             expressionNode = parseExpression();
         }
 
-//        need(Token.TokenType.NEWLINE, peek());
+//        need(Token.TokenType.NEWLINE);
 
         next();
 
@@ -416,12 +390,12 @@ public class Parser {
     }
 
     private StatementNode parseIfStatement() {
-        need(Token.TokenType.IF, peek());
+        need(Token.TokenType.IF);
         next();
 
         ExpressionNode expressionNode = parseConditionalExpression();
 
-        need(Token.TokenType.NEWLINE, peek());
+        need(Token.TokenType.NEWLINE);
         next();
 
         currentTab++;
@@ -432,12 +406,12 @@ public class Parser {
     }
 
     private StatementNode parseElifStatement() {
-        need(Token.TokenType.ELIF, peek());
+        need(Token.TokenType.ELIF);
         next();
 
         ExpressionNode expressionNode = parseConditionalExpression();
 
-        need(Token.TokenType.NEWLINE, peek());
+        need(Token.TokenType.NEWLINE);
         next();
 
         currentTab++;
@@ -448,10 +422,10 @@ public class Parser {
     }
 
     private StatementNode parseElseStatement() {
-        need(Token.TokenType.ELSE, peek());
+        need(Token.TokenType.ELSE);
         next();
 
-        need(Token.TokenType.NEWLINE, peek());
+        need(Token.TokenType.NEWLINE);
         next();
 
         currentTab++;
@@ -461,12 +435,12 @@ public class Parser {
     }
 
     private StatementNode parseWhileStatement() {
-        need(Token.TokenType.WHILE, peek());
+        need(Token.TokenType.WHILE);
         next();
 
         ExpressionNode predicate = parseConditionalExpression();
 
-        need(Token.TokenType.NEWLINE, peek());
+        need(Token.TokenType.NEWLINE);
         next();
 
         currentTab++;
@@ -476,34 +450,34 @@ public class Parser {
     }
 
     private StatementNode parseContinueStatement() {
-        need(Token.TokenType.CONTINUE, peek());
+        need(Token.TokenType.CONTINUE);
         next();
-        need(Token.TokenType.NEWLINE, peek());
+        need(Token.TokenType.NEWLINE);
         next();
         return new ContinueStatementNode();
     }
 
     private StatementNode parseReturnStatement() {
-        need(Token.TokenType.RETURN, peek());
+        need(Token.TokenType.RETURN);
         next();
 
         ExpressionNode expressionNode = null;
 
-        if (peek().getTokenType() != Token.TokenType.NEWLINE) {
+        if (peek() != Token.TokenType.NEWLINE) {
             expressionNode = parseConditionalExpression();
         }
 
-        need(Token.TokenType.NEWLINE, peek());
+        need(Token.TokenType.NEWLINE);
         next();
 
         return new ReturnStatementNode(expressionNode);
     }
 
     private StatementNode parseBreakStatement() {
-        need(Token.TokenType.BREAK, peek());
+        need(Token.TokenType.BREAK);
         next();
 
-        need(Token.TokenType.NEWLINE, peek());
+        need(Token.TokenType.NEWLINE);
         next();
         return new BreakStatementNode();
     }
@@ -512,7 +486,7 @@ public class Parser {
         List<ParameterNode> parameters = new ArrayList<>();
 
         while (true) {
-            if (peek().getTokenType() == Token.TokenType.R_PAREN) {
+            if (peek() == Token.TokenType.R_PAREN) {
                 break;
             }
             TypeNode typeNode = parseType();
@@ -521,12 +495,12 @@ public class Parser {
                 break;
             }
 
-            need(Token.TokenType.IDENTIFIER, peek());
+            need(Token.TokenType.IDENTIFIER);
             IdentifierNode identifierNode = parseIdentifier();
 
             parameters.add(new ParameterNode(typeNode, identifierNode));
 
-            if (peek().getTokenType() != Token.TokenType.COMMA) {
+            if (peek() != Token.TokenType.COMMA) {
                 break;
             } else {
                 next();
@@ -538,41 +512,41 @@ public class Parser {
 
     // TYPE ::= INT | FLOAT | VOID
     private TypeNode parseType() {
-        Token type = peek();
+        Token.TokenType type = peek();
 
-        if (type.getTokenType() == Token.TokenType.EOF) {
+        if (type == Token.TokenType.EOF) {
             return null;
         }
 
         TypeNode typeNode = null;
-        if (type.getTokenType() == Token.TokenType.L_PAREN) {
-            need(Token.TokenType.L_PAREN, peek());
+        if (type == Token.TokenType.L_PAREN) {
+            need(Token.TokenType.L_PAREN);
             next();
 
             ParametersNode parametersNode = parseParameterList();
 
-            need(Token.TokenType.R_PAREN, peek());
+            need(Token.TokenType.R_PAREN);
             next();
 
-            if (peek().getTokenType() != Token.TokenType.ARROW) {
+            if (peek() != Token.TokenType.ARROW) {
                 typeNode = parseType();
             }
             typeNode = new FunctionNode(parametersNode, typeNode);
-        } else if (type.getTokenType() == Token.TokenType.IDENTIFIER) {
+        } else if (type == Token.TokenType.IDENTIFIER) {
             typeNode = new ObjectTypeNode(parseIdentifier());
         } else {
-            typeNode = parseBasicType(type);
+            typeNode = parseBasicType();
             if (typeNode == null) {
                 return null;
             }
         }
 
         while (true) {
-            if (peek().getTokenType() == Token.TokenType.LB_PAREN) {
-                need(Token.TokenType.LB_PAREN, peek());
+            if (peek() == Token.TokenType.LB_PAREN) {
+                need(Token.TokenType.LB_PAREN);
                 next();
 
-                need(Token.TokenType.RB_PAREN, peek());
+                need(Token.TokenType.RB_PAREN);
                 next();
                 typeNode = new ArrayTypeNode(typeNode);
             } else {
@@ -583,9 +557,9 @@ public class Parser {
         return typeNode;
     }
 
-    private TypeNode parseBasicType(Token type) {
+    private TypeNode parseBasicType() {
         TypeNode typeNode;
-        next();
+        Token type = tokens.getToken(next());
 
         switch (type.getTokenType()) {
             case VOID:
@@ -611,240 +585,233 @@ public class Parser {
     }
 
     private IdentifierNode parseIdentifier() {
-        Token identifier = peek();
-
-        if (identifier.getTokenType() != Token.TokenType.IDENTIFIER) {
+        if (peek() != Token.TokenType.IDENTIFIER) {
             return null;
         }
-        next();
+        Token identifier = tokens.getToken(next());
         return new IdentifierNode(identifier.getContent(), identifier);
     }
 
     // CONDITIONAL_EXPRESSION ::= LOGICAL_OR_EXPRESSION
     //                            | LOGICAL_OR_EXPRESSION ? CONDITIONAL_EXPRESSION : CONDITIONAL_EXPRESSION
-    private ExpressionNode parseConditionalExpression() {
-        ExpressionNode first = parseLogicalOrExpression();
-
-        Token token = peek();
-
-        if (token.getTokenType() == Token.TokenType.QUESTION) {
-            next();
-            ExpressionNode thenNode = parseConditionalExpression();
-            next();
-            ExpressionNode elseNode = parseConditionalExpression();
-            return new ConditionalExpressionNode(first, thenNode, elseNode);
-        }
-
-        return first;
-    }
-
     // LOGICAL_OR_EXPRESSION ::= LOGICAL_AND_EXPRESSION | LOGICAL_OR_EXPRESSION OR LOGICAL_AND_EXPRESSION
-    private ExpressionNode parseLogicalOrExpression() {
-        ExpressionNode first = parseLogicalAndExpression();
-        LogicalOrExpressionNode current = null;
+    // LOGICAL_AND_EXPRESSION ::= EQUALITY_EXPRESSION | LOGICAL_AND_EXPRESSION AND EQUALITY_EXPRESSION
+    // EQUALITY_EXPRESSION ::= RELATIONAL_EXPRESSION | EQUALITY_EXPRESSION (== | !=) RELATIONAL_EXPRESSION
+    // RELATIONAL_EXPRESSION ::= ADDITIVE_EXPRESSION | RELATIONAL_EXPRESSION (<= | >= | < | >) ADDITIVE_EXPRESSION
+    // ADDITIVE_EXPRESSION ::= MULTIPLICATIVE_EXPRESSION | ADDITIVE_EXPRESSION (+ | -) MULTIPLICATIVE_EXPRESSION
+    // MULTIPLICATIVE_EXPRESSION ::= CAST_EXPRESSION | MULTIPLICATIVE_EXPRESSION (* | / | %) CAST_EXPRESSION
+    // CAST_EXPRESSION ::= UNARY_EXPRESSION | < TYPE > CAST_EXPRESSION
+    // UNARY_EXPRESSION ::= POST_EXPRESSION | (++ | ** | --) UNARY_EXPRESSION
+    //
+    // Conditional expressions opened by a parenthesis or by ? and : are kept on an explicit stack
+    // instead of recursing, so how deep they nest is only bounded by the heap. Brackets and the
+    // arguments of a call still recurse, one conditional expression per level.
+    private ExpressionNode parseConditionalExpression() {
+        Deque<OpenExpression> open = new ArrayDeque<>();
+        OpenExpression expression = new OpenExpression(OpenExpression.Kind.STATEMENT);
+        ExpressionNode operand = null;
 
         while (true) {
-            Token token = peek();
-
-            if (token.getTokenType() == Token.TokenType.OR) {
-                next();
-                if (current == null) {
-                    current = new LogicalOrExpressionNode(first, parseLogicalAndExpression());
-                } else {
-                    current = new LogicalOrExpressionNode(current, parseLogicalAndExpression());
+            if (operand == null) {
+                parsePrefixes(expression);
+                if (peek() == Token.TokenType.L_PAREN) {
+                    next();
+                    open.push(expression);
+                    expression = new OpenExpression(OpenExpression.Kind.PARENTHESES);
+                    continue;
                 }
-            } else {
-                break;
+                operand = parsePrimaryExpression();
             }
-        }
-
-        return current == null ? first : current;
-    }
 
-    // LOGICAL_AND_EXPRESSION ::= EQUALITY_EXPRESSION | LOGICAL_AND_EXPRESSION AND EQUALITY_EXPRESSION
-    private ExpressionNode parseLogicalAndExpression() {
-        ExpressionNode first = parseEqualityExpression();
-        LogicalAndExpressionNode current = null;
-
-        while (true) {
-            Token token = peek();
+            operand = expression.applyPrefixes(parsePostfixes(operand));
 
-            if (token.getTokenType() == Token.TokenType.AND) {
+            Token.TokenType token = peek();
+            if (precedence(token) > 0) {
                 next();
-                if (current == null) {
-                    current = new LogicalAndExpressionNode(first, parseEqualityExpression());
-                } else {
-                    current = new LogicalAndExpressionNode(current, parseEqualityExpression());
-                }
-            } else {
-                break;
+                expression.addOperator(token, operand);
+                operand = null;
+                continue;
             }
-        }
 
-        return current == null ? first : current;
-    }
-
-    // EQUALITY_EXPRESSION ::= RELATIONAL_EXPRESSION | EQUALITY_EXPRESSION == RELATIONAL_EXPRESSION | EQUALITY_EXPRESSION != RELATIONAL_EXPRESSION
-    private ExpressionNode parseEqualityExpression() {
-        ExpressionNode first = parseRelationalExpression();
-        EqualityExpressionNode current = null;
+            ExpressionNode value = expression.close(operand);
+            operand = null;
 
-        while (true) {
-            Token token = peek();
-
-            if (token.getTokenType() == Token.TokenType.EQUAL || token.getTokenType() == Token.TokenType.NOT_EQUAL) {
+            if (peek() == Token.TokenType.QUESTION) {
                 next();
+                expression.condition = value;
+                open.push(expression);
+                expression = new OpenExpression(OpenExpression.Kind.THEN);
+                continue;
+            }
 
-                EqualityExpressionNode.EqualityType type = null;
-
-                switch (token.getTokenType()) {
-                    case EQUAL:
-                        type = EqualityExpressionNode.EqualityType.EQ;
+            // Finishing an expression can finish the ones it is the last part of.
+            boolean finishing = true;
+            while (finishing) {
+                switch (expression.kind) {
+                    case STATEMENT:
+                        return value;
+                    case PARENTHESES:
+                        next();
+                        expression = open.pop();
+                        operand = value;
+                        finishing = false;
                         break;
-                    case NOT_EQUAL:
+                    case THEN:
+                        next();
+                        open.peek().then = value;
+                        expression = new OpenExpression(OpenExpression.Kind.ELSE);
+                        finishing = false;
+                        break;
+                    case ELSE:
                     default:
-                        type = EqualityExpressionNode.EqualityType.NE;
+                        OpenExpression conditional = open.pop();
+                        value = new ConditionalExpressionNode(conditional.condition, conditional.then, value);
+                        expression = conditional;
                 }
-
-                if (current == null) {
-                    current = new EqualityExpressionNode(type, first, parseRelationalExpression());
-                } else {
-                    current = new EqualityExpressionNode(type, current, parseRelationalExpression());
-                }
-            } else {
-                break;
             }
         }
-
-        return current == null ? first : current;
     }
 
-    // RELATIONAL_EXPRESSION ::= ADDITIVE_EXPRESSION
-    // | RELATIONAL_EXPRESSION <= ADDITIVE_EXPRESSION
-    // | RELATIONAL_EXPRESSION >= ADDITIVE_EXPRESSION
-    // | RELATIONAL_EXPRESSION < ADDITIVE_EXPRESSION
-    // | RELATIONAL_EXPRESSION > ADDITIVE_EXPRESSION
-    private ExpressionNode parseRelationalExpression() {
-        ExpressionNode first = parseAdditiveExpression();
-        RelationalExpressionNode current = null;
-
-        while (true) {
-            Token token = peek();
+    // A conditional expression that is being parsed: the operands and operators precedence
+    // climbing has not folded yet, the casts and prefix operators of the operand being read, and
+    // the condition and then part once ? and : are met. All binary levels are left associative, so
+    // an operator folds the operators on the stack down to its own precedence, giving the same
+    // trees as one method per level.
+    private static final class OpenExpression {
+        private enum Kind {
+            STATEMENT, PARENTHESES, THEN, ELSE
+        }
 
-            if (token.getTokenType() == Token.TokenType.GE || token.getTokenType() == Token.TokenType.GT
-                    || token.getTokenType() == Token.TokenType.LE || token.getTokenType() == Token.TokenType.LT) {
-                next();
+        private final Kind kind;
+        private final Deque<ExpressionNode> operands = new ArrayDeque<>();
+        private final Deque<Token.TokenType> operators = new ArrayDeque<>();
+        private final List<TypeNode> casts = new ArrayList<>();
+        private final List<Token.TokenType> prefixes = new ArrayList<>();
+        private ExpressionNode condition;
+        private ExpressionNode then;
 
-                RelationalExpressionNode.RelationalType type = null;
+        private OpenExpression(Kind kind) {
+            this.kind = kind;
+        }
 
-                switch (token.getTokenType()) {
-                    case GE:
-                        type = RelationalExpressionNode.RelationalType.GE;
+        // Prefix operators apply innermost first, casts go around them.
+        private ExpressionNode applyPrefixes(ExpressionNode expressionNode) {
+            for (int i = prefixes.size() - 1; i >= 0; i--) {
+                switch (prefixes.get(i)) {
+                    case INC_ADD:
+                        expressionNode = new PrefixIncrementAdditiveExpressionNode(expressionNode);
                         break;
-                    case LE:
-                        type = RelationalExpressionNode.RelationalType.LE;
+                    case INC_MUL:
+                        expressionNode = new PrefixIncrementMultiplicativeExpressionNode(expressionNode);
                         break;
-                    case LT:
-                        type = RelationalExpressionNode.RelationalType.LT;
-                        break;
-                    case GT:
+                    case DEC:
                     default:
-                        type = RelationalExpressionNode.RelationalType.GT;
-                        break;
+                        expressionNode = new PrefixDecrementSubtractionExpressionNode(expressionNode);
                 }
-
-                if (current == null) {
-                    current = new RelationalExpressionNode(type, first, parseAdditiveExpression());
-                } else {
-                    current = new RelationalExpressionNode(type, current, parseAdditiveExpression());
-                }
-            } else {
-                break;
             }
-        }
-
-        return current == null ? first : current;
-    }
-
-    // ADDITIVE_EXPRESSION ::= MULTIPLICATIVE_EXPRESSION | ADDITIVE_EXPRESSION + MULTIPLICATIVE_EXPRESSION | ADDITIVE_EXPRESSION - MULTIPLICATIVE_EXPRESSION
-    private ExpressionNode parseAdditiveExpression() {
-        ExpressionNode first = parseMultiplicativeExpression();
-        AdditiveExpressionNode current = null;
-
-        while (true) {
-            Token token = peek();
+            for (int i = casts.size() - 1; i >= 0; i--) {
+                expressionNode = new CastExpressionNode(casts.get(i), expressionNode);
+            }
 
-            if (token.getTokenType() == Token.TokenType.PLUS || token.getTokenType() == Token.TokenType.MINUS) {
-                next();
+            prefixes.clear();
+            casts.clear();
+            return expressionNode;
+        }
 
-                AdditiveExpressionNode.AdditiveType type = null;
+        private void addOperator(Token.TokenType token, ExpressionNode left) {
+            operands.push(left);
+            fold(precedence(token));
+            operators.push(token);
+        }
 
-                switch (token.getTokenType()) {
-                    case PLUS:
-                        type = AdditiveExpressionNode.AdditiveType.ADD;
-                        break;
-                    case MINUS:
-                    default:
-                        type = AdditiveExpressionNode.AdditiveType.SUB;
-                }
+        private ExpressionNode close(ExpressionNode last) {
+            operands.push(last);
+            fold(OR_PRECEDENCE);
+            return operands.pop();
+        }
 
-                if (current == null) {
-                    current = new AdditiveExpressionNode(type, first, parseMultiplicativeExpression());
-                } else {
-                    current = new AdditiveExpressionNode(type, current, parseMultiplicativeExpression());
-                }
-            } else {
-                break;
+        private void fold(int minPrecedence) {
+            while (!operators.isEmpty() && precedence(operators.peek()) >= minPrecedence) {
+                ExpressionNode right = operands.pop();
+                ExpressionNode left = operands.pop();
+                operands.push(createBinaryExpression(operators.pop(), left, right));
             }
         }
-
-        return current == null ? first : current;
     }
 
-    // MULTIPLICATIVE_EXPRESSION ::= PRIMARY_EXPRESSION | MULTIPLICATIVE_EXPRESSION * PRIMARY_EXPRESSION | MULTIPLICATIVE_EXPRESSION / PRIMARY_EXPRESSION
-    private ExpressionNode parseMultiplicativeExpression() {
-        ExpressionNode first = parseCastExpression();
-        MultiplicativeExpressionNode current = null;
-
-        while (true) {
-            Token token = peek();
-
-            if (token.getTokenType() == Token.TokenType.ASTERISK || token.getTokenType() == Token.TokenType.SLASH
-                    || token.getTokenType() == Token.TokenType.PERCENT) {
-                next();
-
-                MultiplicativeExpressionNode.MultiplicativeType type = null;
-
-                switch (token.getTokenType()) {
-                    case ASTERISK:
-                        type = MultiplicativeExpressionNode.MultiplicativeType.MUL;
-                        break;
-                    case SLASH:
-                        type = MultiplicativeExpressionNode.MultiplicativeType.DIV;
-                        break;
-                    case PERCENT:
-                    default:
-                        type = MultiplicativeExpressionNode.MultiplicativeType.MOD;
-                }
-
-                if (current == null) {
-                    current = new MultiplicativeExpressionNode(type, first, parseCastExpression());
-                } else {
-                    current = new MultiplicativeExpressionNode(type, current, parseCastExpression());
-                }
-            } else {
-                break;
-            }
+    private static final int OR_PRECEDENCE = 1;
+    private static final int AND_PRECEDENCE = 2;
+    private static final int EQUALITY_PRECEDENCE = 3;
+    private static final int RELATIONAL_PRECEDENCE = 4;
+    private static final int ADDITIVE_PRECEDENCE = 5;
+    private static final int MULTIPLICATIVE_PRECEDENCE = 6;
+
+    private static int precedence(Token.TokenType token) {
+        switch (token) {
+            case OR:
+                return OR_PRECEDENCE;
+            case AND:
+                return AND_PRECEDENCE;
+            case EQUAL:
+            case NOT_EQUAL:
+                return EQUALITY_PRECEDENCE;
+            case GE:
+            case GT:
+            case LE:
+            case LT:
+                return RELATIONAL_PRECEDENCE;
+            case PLUS:
+            case MINUS:
+                return ADDITIVE_PRECEDENCE;
+            case ASTERISK:
+            case SLASH:
+            case PERCENT:
+                return MULTIPLICATIVE_PRECEDENCE;
+            default:
+                return 0;
+        }
+    }
+
+    private static ExpressionNode createBinaryExpression(Token.TokenType token,
+                                                         ExpressionNode left,
+                                                         ExpressionNode right) {
+        switch (token) {
+            case OR:
+                return new LogicalOrExpressionNode(left, right);
+            case AND:
+                return new LogicalAndExpressionNode(left, right);
+            case EQUAL:
+                return new EqualityExpressionNode(EqualityExpressionNode.EqualityType.EQ, left, right);
+            case NOT_EQUAL:
+                return new EqualityExpressionNode(EqualityExpressionNode.EqualityType.NE, left, right);
+            case GE:
+                return new RelationalExpressionNode(RelationalExpressionNode.RelationalType.GE, left, right);
+            case LE:
+                return new RelationalExpressionNode(RelationalExpressionNode.RelationalType.LE, left, right);
+            case LT:
+                return new RelationalExpressionNode(RelationalExpressionNode.RelationalType.LT, left, right);
+            case GT:
+                return new RelationalExpressionNode(RelationalExpressionNode.RelationalType.GT, left, right);
+            case PLUS:
+                return new AdditiveExpressionNode(AdditiveExpressionNode.AdditiveType.ADD, left, right);
+            case MINUS:
+                return new AdditiveExpressionNode(AdditiveExpressionNode.AdditiveType.SUB, left, right);
+            case ASTERISK:
+                return new MultiplicativeExpressionNode(MultiplicativeExpressionNode.MultiplicativeType.MUL, left, right);
+            case SLASH:
+                return new MultiplicativeExpressionNode(MultiplicativeExpressionNode.MultiplicativeType.DIV, left, right);
+            case PERCENT:
+                return new MultiplicativeExpressionNode(MultiplicativeExpressionNode.MultiplicativeType.MOD, left, right);
+            default:
+                throw new IllegalArgumentException("Not a binary operator " + token);
         }
-
-        return current == null ? first : current;
     }
 
     private ExpressionListNode parseExpressionListNode() {
         List<ExpressionNode> list = new ArrayList<>();
 
         while (true) {
-            if (peek().getTokenType() == Token.TokenType.R_PAREN) {
+            if (peek() == Token.TokenType.R_PAREN) {
                 break;
             }
             ExpressionNode expressionNode = parseConditionalExpression();
@@ -855,7 +822,7 @@ public class Parser {
 
             list.add(expressionNode);
 
-            if (peek().getTokenType() != Token.TokenType.COMMA) {
+            if (peek() != Token.TokenType.COMMA) {
                 break;
             } else {
                 next();
@@ -865,61 +832,48 @@ public class Parser {
         return new ExpressionListNode(list);
     }
 
-    private ExpressionNode parseCastExpression() {
-        if (peek().getTokenType() == Token.TokenType.LT) {
+    // Casts and prefix operators in front of an operand, skipping the newlines among the prefixes.
+    private void parsePrefixes(OpenExpression expression) {
+        while (peek() == Token.TokenType.LT) {
             next();
-            TypeNode typeNode = parseType();
+            expression.casts.add(parseType());
             next();
-            ExpressionNode expressionNode = parseCastExpression();
-            return new CastExpressionNode(typeNode, expressionNode);
-        } else {
-            return parseUnaryExpression();
         }
-    }
 
-    private ExpressionNode parseUnaryExpression() {
-        Token first = peek();
-        if (first.getTokenType() == Token.TokenType.NEWLINE) {
-            Token second = next();
-            return parseUnaryExpression();
-        }
-        ExpressionNode expressionNode = null;
-
-        if (first.getTokenType() == Token.TokenType.INC_ADD) {
-            next();
-            expressionNode = new PrefixIncrementAdditiveExpressionNode(parseUnaryExpression());
-        } else if (first.getTokenType() == Token.TokenType.INC_MUL) {
-            next();
-            expressionNode = new PrefixIncrementMultiplicativeExpressionNode(parseUnaryExpression());
-        } else if (first.getTokenType() == Token.TokenType.DEC) {
-            next();
-            expressionNode = new PrefixDecrementSubtractionExpressionNode(parseUnaryExpression());
-        } else {
-            expressionNode = parsePostExpression();
+        while (true) {
+            Token.TokenType first = peek();
+            if (first == Token.TokenType.NEWLINE) {
+                next();
+            } else if (first == Token.TokenType.INC_ADD
+                    || first == Token.TokenType.INC_MUL
+                    || first == Token.TokenType.DEC) {
+                next();
+                expression.prefixes.add(first);
+            } else {
+                break;
+            }
         }
-        return expressionNode;
     }
 
-    private ExpressionNode parsePostExpression() {
-        ExpressionNode expressionNode = parsePrimaryExpression();
-
+    // Postfix operators, field accesses, calls and indexing after an operand.
+    private ExpressionNode parsePostfixes(ExpressionNode expressionNode) {
         while (true) {
-            if (peek().getTokenType() == Token.TokenType.INC_ADD) {
+            if (peek() == Token.TokenType.INC_ADD) {
                 next();
                 expressionNode = new PostfixIncrementAdditiveExpressionNode(expressionNode);
-            } else if (peek().getTokenType() == Token.TokenType.INC_MUL) {
+            } else if (peek() == Token.TokenType.INC_MUL) {
                 next();
                 expressionNode = new PostfixIncrementMultiplicativeExpressionNode(expressionNode);
-            } else if (peek().getTokenType() == Token.TokenType.DEC) {
+            } else if (peek() == Token.TokenType.DEC) {
                 next();
                 expressionNode = new PostfixDecrementSubtractionExpressionNode(expressionNode);
-            } else if (peek().getTokenType() == Token.TokenType.POINT) {
+            } else if (peek() == Token.TokenType.POINT) {
                 next();
                 VariableExpressionNode right = new VariableExpressionNode(parseIdentifier());
                 expressionNode = new FieldAccessExpressionNode(expressionNode, right);
-            } else if (peek().getTokenType() == Token.TokenType.L_PAREN) {
+            } else if (peek() == Token.TokenType.L_PAREN) {
                 next();
-                if (peek().getTokenType() != Token.TokenType.R_PAREN) {
+                if (peek() != Token.TokenType.R_PAREN) {
                     ExpressionListNode expressionListNode = parseExpressionListNode();
                     next();
                     expressionNode = new FunctionCallExpressionNode(expressionNode, expressionListNode);
@@ -927,7 +881,7 @@ public class Parser {
                     next();
                     expressionNode = new FunctionCallExpressionNode(expressionNode, new ExpressionListNode(List.of()));
                 }
-            } else if (peek().getTokenType() == Token.TokenType.LB_PAREN) {
+            } else if (peek() == Token.TokenType.LB_PAREN) {
                 next();
                 ExpressionNode argument = parseConditionalExpression();
                 next();
@@ -941,73 +895,72 @@ public class Parser {
     }
 
     // PRIMARY_EXPRESSION ::= IDENTIFIER | CONSTANT | L_PAREN CONDITIONAL_EXPRESSION R_PAREN
+    // The parentheses are opened and closed by parseConditionalExpression.
     private ExpressionNode parsePrimaryExpression() {
-        Token first = peek();
+        int index = position;
+        Token.TokenType first = peek();
 
-        if (first.getTokenType() == Token.TokenType.IDENTIFIER) {
+        if (first == Token.TokenType.IDENTIFIER) {
             IdentifierNode identifierNode = parseIdentifier();
             return new VariableExpressionNode(identifierNode);
-        } else if (first.getTokenType() == THIS) {
+        } else if (first == THIS) {
             next();
             return new ThisExpressionNode();
-        } else if (first.getTokenType() == Token.TokenType.FLOAT_CONSTANT) {
+        } else if (first == Token.TokenType.FLOAT_CONSTANT) {
             next();
-            return new FloatConstantExpressionNode(Float.parseFloat(first.getContent()));
-        } else if (first.getTokenType() == CHAR_CONSTANT) {
+            return new FloatConstantExpressionNode(Float.parseFloat(tokens.getContent(index)));
+        } else if (first == CHAR_CONSTANT) {
             next();
+            String content = tokens.getContent(index);
             return new CharConstantExpressionNode((char)
-                    Integer.parseInt(first.getContent().substring(0, first.getContent().length() - 1)));
-        } else if (first.getTokenType() == Token.TokenType.INT_CONSTANT) {
+                    Integer.parseInt(content.substring(0, content.length() - 1)));
+        } else if (first == Token.TokenType.INT_CONSTANT) {
             next();
-            return new IntConstantExpressionNode(Integer.parseInt(first.getContent()));
-        } else if (first.getTokenType() == Token.TokenType.LONG_CONSTANT) {
+            return new IntConstantExpressionNode(Integer.parseInt(tokens.getContent(index)));
+        } else if (first == Token.TokenType.LONG_CONSTANT) {
             next();
-            return new LongConstantExpressionNode(Long.parseLong(first.getContent().substring(0, first.getContent().length()-1)));
-        }else if (first.getTokenType() == STRING_CONSTANT) {
+            String content = tokens.getContent(index);
+            return new LongConstantExpressionNode(Long.parseLong(content.substring(0, content.length()-1)));
+        }else if (first == STRING_CONSTANT) {
             next();
-            return new StringConstantExpressionNode(first.getContent().substring(1, first.getContent().length() - 1));
-        } else if (first.getTokenType() == Token.TokenType.NULL) {
+            String content = tokens.getContent(index);
+            return new StringConstantExpressionNode(content.substring(1, content.length() - 1));
+        } else if (first == Token.TokenType.NULL) {
             next();
             return new NullConstantExpressionNode();
-        } else if (first.getTokenType() == Token.TokenType.TRUE) {
-            next();
-            return new BoolConstantExpressionNode(true, first);
-        } else if (first.getTokenType() == Token.TokenType.FALSE) {
+        } else if (first == Token.TokenType.TRUE) {
             next();
-            return new BoolConstantExpressionNode(false, first);
-        } else if (first.getTokenType() == Token.TokenType.L_PAREN) {
+            return new BoolConstantExpressionNode(true, tokens.getToken(index));
+        } else if (first == Token.TokenType.FALSE) {
             next();
-            ExpressionNode expressionNode = parseConditionalExpression();
-            next();
-            return expressionNode;
+            return new BoolConstantExpressionNode(false, tokens.getToken(index));
         } else {
             IdentifierNode identifierNode = null;
-            Token token = peek();
+            Token.TokenType token = peek();
             TypeNode typeNode = null;
 
-            if (token.getTokenType() == NEW) {
+            if (token == NEW) {
                 next();
                 token = peek();
-                if (token.getTokenType() == IDENTIFIER
-                        || token.getTokenType() == INT
-                        || token.getTokenType() == Token.TokenType.LONG
-                        || token.getTokenType() == FLOAT
-                        || token.getTokenType() == CHAR) {
-                    if (token.getTokenType() == IDENTIFIER) {
-                        identifierNode = new IdentifierNode(token.getContent(), token);
+                if (token == IDENTIFIER
+                        || token == INT
+                        || token == Token.TokenType.LONG
+                        || token == FLOAT
+                        || token == CHAR) {
+                    if (token == IDENTIFIER) {
+                        identifierNode = parseIdentifier();
                         typeNode = new ObjectTypeNode(identifierNode);
-                        next();
                     } else {
-                        typeNode = parseBasicType(token);
+                        typeNode = parseBasicType();
                     }
                 } else {
                     throw new IllegalArgumentException("");
                 }
 
-                if (peek().getTokenType() == Token.TokenType.LB_PAREN) {
+                if (peek() == Token.TokenType.LB_PAREN) {
                     List<ExpressionNode> expressionNodes = new ArrayList<>();
                     while (true) {
-                        if (peek().getTokenType() == Token.TokenType.LB_PAREN) {
+                        if (peek() == Token.TokenType.LB_PAREN) {
                             next();
                             ExpressionNode expressionNode = parseExpression();
                             next();
@@ -1019,7 +972,7 @@ public class Parser {
                     }
 
                     return new ArrayConstructorExpressionNode(typeNode, expressionNodes);
-                } else if (peek().getTokenType() == L_PAREN) {
+                } else if (peek() == L_PAREN) {
                     next();
                     ExpressionListNode expressionListNode = parseExpressionListNode();
                     next();
@@ -1030,14 +983,14 @@ public class Parser {
         throw new IllegalArgumentException("");
     }
 
-    private void need(Token.TokenType tokenType, Token current) {
-        throwExpected(List.of(tokenType), current);
+    private void need(Token.TokenType tokenType) {
+        throwExpected(List.of(tokenType));
     }
 
-    private void throwExpected(List<Token.TokenType> expected, Token result) {
-        if (!expected.contains(result.getTokenType())) {
+    private void throwExpected(List<Token.TokenType> expected) {
+        if (!expected.contains(peek())) {
             throw new IllegalStateException("Expected " + expected.toString()
-                    + " but current " + result);
+                    + " but current " + tokens.getToken(position));
         }
     }
 }
@@ -0,0 +1,27 @@
+package lang.semantic;
+
+// Fresh names and scope numbers for the declarations of one file. Every file numbers its own
+// declarations, so the names do not depend on the order the files are analysed in. A generator is
+// only used by the thread analysing its file.
+public class NameGenerator {
+
+    private final String prefix;
+    private int variableCount;
+    private int scopeCount;
+
+    public NameGenerator(int fileNumber) {
+        this.prefix = "$" + fileNumber + ".";
+        this.variableCount = 0;
+        this.scopeCount = 0;
+    }
+
+    public String nextName(String name) {
+        String nextName = prefix + variableCount + "_" + name;
+        variableCount++;
+        return nextName;
+    }
+
+    public int nextScopeNumber() {
+        return scopeCount++;
+    }
+}
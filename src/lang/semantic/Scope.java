@@ -6,27 +6,37 @@ import lang.ast.statement.*;
 import lang.ir.VariableValue;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class Scope {
-    private static int VARIABLE_COUNT = 0;
-    private static int SCOPE_COUNT = 0;
-
+    private final NameGenerator names;
     private final Scope parentScope;
     private final List<Scope> alternativeScopes = new ArrayList<>();
     private final List<AstNode> nodes;
     private final List<AstNode> declarations;
-    private final int number = SCOPE_COUNT++;
+    private final Map<String, AstNode> declarationsByName;
+    private final int number;
 
     private AstNode owner;
 
+    public Scope(NameGenerator names) {
+        this(null, names);
+    }
+
     public Scope(Scope scope) {
+        this(scope, scope.names);
+    }
+
+    private Scope(Scope scope, NameGenerator names) {
+        this.names = names;
         this.parentScope = scope;
+        this.number = names.nextScopeNumber();
         this.declarations = new ArrayList<>();
+        this.declarationsByName = new HashMap<>();
         this.nodes = new ArrayList<>();
     }
 
@@ -81,16 +91,57 @@ public class Scope {
         }
 
         declarations.add(node);
+        index(node);
     }
 
     public void addWeakDeclaration(StatementNode statementNode) {
         declarations.add(statementNode);
+        index(statementNode);
+    }
+
+    // Declarations are found by the name written in the source. addDeclaration prefixes the name
+    // with "$F.N_" (once more if a node is declared again) and imported statements keep the prefix
+    // of their own file, so every prefix is stripped; the first declaration of a name wins.
+    private void index(AstNode node) {
+        String name = declaredName(node);
+        if (name != null) {
+            declarationsByName.putIfAbsent(sourceName(name), node);
+        }
+    }
+
+    private static String declaredName(AstNode node) {
+        if (node instanceof DeclarationStatementNode) {
+            return ((DeclarationStatementNode) node).getIdentifierNode().getName();
+        } else if (node instanceof ParameterNode) {
+            return ((ParameterNode) node).getIdentifierNode().getName();
+        } else if (node instanceof InterfaceStatementNode) {
+            return ((InterfaceStatementNode) node).getIdentifierNode().getName();
+        } else if (node instanceof ClassStatementNode) {
+            return ((ClassStatementNode) node).getIdentifierNode().getName();
+        } else if (node instanceof FunctionDefinitionNode) {
+            return ((FunctionDefinitionNode) node).getIdentifierNode().getName();
+        } else {
+            return null;
+        }
+    }
+
+    private static String sourceName(String name) {
+        int start = 0;
+        while (start < name.length() && name.charAt(start) == '$') {
+            int end = start + 1;
+            while (end < name.length() && (Character.isDigit(name.charAt(end)) || name.charAt(end) == '.')) {
+                end++;
+            }
+            if (end == start + 1 || end == name.length() || name.charAt(end) != '_') {
+                break;
+            }
+            start = end + 1;
+        }
+        return name.substring(start);
     }
 
     private String nextName(String name) {
-        String nextName = "$" + VARIABLE_COUNT + "_" + name;
-        VARIABLE_COUNT++;
-        return nextName;
+        return names.nextName(name);
     }
 
     public List<AstNode> getDeclarations() {
@@ -142,29 +193,6 @@ public class Scope {
     }
 
     public AstNode matchDeclaration(String currentName) {
-        Pattern pattern = Pattern.compile("\\$\\d+_" + currentName + "\\Z");
-
-        return declarations
-                .stream()
-                .filter(n -> {
-                    Matcher matcher = null;
-                    if (n instanceof DeclarationStatementNode) {
-                        matcher = pattern.matcher(((DeclarationStatementNode) n).getIdentifierNode().getName());
-                    } else if (n instanceof ParameterNode) {
-                        matcher = pattern.matcher(((ParameterNode) n).getIdentifierNode().getName());
-                    } else if (n instanceof InterfaceStatementNode) {
-                        matcher = pattern.matcher(((InterfaceStatementNode) n).getIdentifierNode().getName());
-                    } else if (n instanceof ClassStatementNode) {
-                        matcher = pattern.matcher(((ClassStatementNode) n).getIdentifierNode().getName());
-                    } else if (n instanceof FunctionDefinitionNode) {
-                        matcher = pattern.matcher(((FunctionDefinitionNode) n).getIdentifierNode().getName());
-                    } else {
-                        return false;
-                    }
-
-                    return matcher.find();
-                })
-                .findFirst()
-                .orElse(null);
+        return declarationsByName.get(currentName);
     }
 }
@@ -1,13 +1,22 @@
 package lang.semantic;
 
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import lang.CompilerSession;
 import lang.ast.ArrayTypeNode;
 import lang.ast.AstNode;
 import lang.ast.BasicTypeNode;
@@ -66,51 +75,155 @@ import lang.ast.statement.InterfaceStatementNode;
 import lang.ast.statement.ReturnStatementNode;
 import lang.ast.statement.StatementNode;
 import lang.ast.statement.WhileStatementNode;
+import lang.stats.Stats;
 
 import static lang.ast.GlobalBasicType.REF_TYPE;
 
 public class SemanticAnalysis {
 
+    // What one file adds to the program in one phase.
+    private static class Definitions {
+        private final List<FunctionDefinitionNode> functions;
+        private final List<ClassStatementNode> classes;
+        private final List<ConstructorDefinitionNode> constructors;
+        private final List<DeclarationStatementNode> globalVariables;
+
+        private Definitions(SemanticAnalysis analysis) {
+            this.functions = analysis.functions;
+            this.classes = analysis.classes;
+            this.constructors = analysis.constructors;
+            this.globalVariables = analysis.globalVariables;
+        }
+    }
+
     private final String rootPath;
     private final List<FileNode> fileNodes;
+    private final boolean verbose;
+    private final int jobs;
+    private final Stats stats;
+    private final Map<String, FileNode> importIndex;
+    private final Map<FileNode, NameGenerator> names;
     private final Map<FileNode, List<FileNode>> importedFiles;
     private FunctionDefinitionNode mainFunction;
+    private final List<ClassStatementNode> knownClasses;
     private final List<FunctionDefinitionNode> functions;
     private final List<ClassStatementNode> classes;
     private final List<ConstructorDefinitionNode> constructors;
     private final List<DeclarationStatementNode> globalVariables;
+    private final Map<FileNode, List<Definitions>> definitions;
+    private final Map<FileNode, List<Definitions>> reused;
+
+    public SemanticAnalysis(CompilerSession session, String rootPath, List<FileNode> fileNodes) {
+        this(session, rootPath, fileNodes, false);
+    }
+
+    public SemanticAnalysis(CompilerSession session, String rootPath, List<FileNode> fileNodes, boolean verbose) {
+        this(session, rootPath, fileNodes, verbose, 1);
+    }
+
+    public SemanticAnalysis(CompilerSession session,
+                            String rootPath,
+                            List<FileNode> fileNodes,
+                            boolean verbose,
+                            int jobs) {
+        this(session, rootPath, fileNodes, verbose, jobs, null);
+    }
+
+    // Files the previous analysis went through are taken as they are, together with what they added
+    // to the program. None of them may import a file that is analysed again, directly or through
+    // other files, and every file must keep its place in the list.
+    public SemanticAnalysis(CompilerSession session,
+                            String rootPath,
+                            List<FileNode> fileNodes,
+                            boolean verbose,
+                            int jobs,
+                            SemanticAnalysis previous) {
+        if (jobs < 1) {
+            throw new IllegalArgumentException("Wrong jobs count " + jobs);
+        }
 
-    public SemanticAnalysis(String rootPath, List<FileNode> fileNodes) {
         this.rootPath = rootPath;
         this.fileNodes = fileNodes;
-        this.importedFiles = new HashMap<>();
+        this.verbose = verbose;
+        this.jobs = jobs;
+        this.stats = session.getStats();
+        this.importIndex = buildImportIndex(fileNodes);
+        this.names = new HashMap<>();
+        this.importedFiles = new ConcurrentHashMap<>();
+        this.knownClasses = List.of();
         this.functions = new ArrayList<>();
         this.classes = new ArrayList<>();
         this.constructors = new ArrayList<>();
         this.globalVariables = new ArrayList<>();
+        this.definitions = new HashMap<>();
+        this.reused = new HashMap<>();
+
+        for (int i = 0; i < fileNodes.size(); i++) {
+            names.put(fileNodes.get(i), session.nameGenerator(i));
+        }
+
+        if (previous != null) {
+            for (FileNode fileNode : fileNodes) {
+                if (previous.definitions.containsKey(fileNode)) {
+                    reused.put(fileNode, previous.definitions.get(fileNode));
+                    importedFiles.put(fileNode, previous.importedFiles.getOrDefault(fileNode, List.of()));
+                    if (fileNode.getStatementNodes().contains(previous.mainFunction)) {
+                        mainFunction = previous.mainFunction;
+                    }
+                }
+            }
+        }
+    }
+
+    // Analyses one file within one phase. It shares the read-only state of the analysis and
+    // collects the definitions it finds in its own lists.
+    private SemanticAnalysis(SemanticAnalysis analysis) {
+        this.rootPath = analysis.rootPath;
+        this.fileNodes = analysis.fileNodes;
+        this.verbose = analysis.verbose;
+        this.jobs = 1;
+        this.stats = analysis.stats;
+        this.importIndex = analysis.importIndex;
+        this.names = analysis.names;
+        this.importedFiles = analysis.importedFiles;
+        this.mainFunction = analysis.mainFunction;
+        this.knownClasses = analysis.classes;
+        this.functions = new ArrayList<>();
+        this.classes = new ArrayList<>();
+        this.constructors = new ArrayList<>();
+        this.globalVariables = new ArrayList<>();
+        this.definitions = Map.of();
+        this.reused = Map.of();
     }
 
     public Program analyse() {
         findMainFunction();
 
-        for (FileNode fileNode : fileNodes) {
-            analyseImports(fileNode);
-        }
-
-        for (FileNode fileNode : fileNodes) {
-            analyseDefinitionsStart(fileNode);
-        }
+        ExecutorService executor = jobs > 1
+                ? Executors.newFixedThreadPool(Math.min(jobs, Math.max(fileNodes.size(), 1)))
+                : null;
 
-        for (FileNode fileNode : fileNodes) {
-            linkImports(fileNode);
-        }
+        try {
+            analyseFiles(executor, SemanticAnalysis::analyseImports);
+            analyseFiles(executor, SemanticAnalysis::analyseDefinitionsStart);
+            analyseFiles(executor, SemanticAnalysis::linkImports);
 
-        for (FileNode fileNode : fileNodes) {
-            analyseDefinitionsMiddle(fileNode);
-        }
+            // Resolving extends adds alternative scopes that lookups from other files walk through,
+            // so this phase stays in file order.
+            for (FileNode fileNode : fileNodes) {
+                if (!reused.containsKey(fileNode)) {
+                    analyseFile(SemanticAnalysis::analyseDefinitionsMiddle, this, fileNode);
+                }
+            }
 
-        for (FileNode fileNode : fileNodes) {
-            analyseDefinitionsEnd(fileNode);
+            // Bodies of other files read the types of fields, globals and constructor parameters, so
+            // all of them are resolved before any body is analysed.
+            analyseFiles(executor, SemanticAnalysis::analyseDefinitionTypes);
+            analyseFiles(executor, SemanticAnalysis::analyseDefinitionsEnd);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
         }
 
         return new Program(
@@ -122,8 +235,86 @@ public class SemanticAnalysis {
                 new ArrayList<>(globalVariables));
     }
 
+    public Map<FileNode, List<FileNode>> getImportedFiles() {
+        return importedFiles;
+    }
+
+    // Runs a phase for every file and returns once all of them are done. Within a phase a file only
+    // changes its own nodes and scopes; the definitions found are appended in file order, so the
+    // result is the same for any number of jobs. Files taken from the previous analysis add what
+    // they added in the same phase then.
+    private void analyseFiles(ExecutorService executor, BiConsumer<SemanticAnalysis, FileNode> phase) {
+        Map<FileNode, SemanticAnalysis> analyses = new HashMap<>();
+        for (FileNode fileNode : fileNodes) {
+            if (!reused.containsKey(fileNode)) {
+                analyses.put(fileNode, new SemanticAnalysis(this));
+            }
+        }
+
+        if (executor == null) {
+            for (FileNode fileNode : fileNodes) {
+                if (analyses.containsKey(fileNode)) {
+                    analyseFile(phase, analyses.get(fileNode), fileNode);
+                }
+            }
+        } else {
+            List<Future<?>> futures = new ArrayList<>();
+            for (FileNode fileNode : fileNodes) {
+                SemanticAnalysis analysis = analyses.get(fileNode);
+                if (analysis != null) {
+                    futures.add(executor.submit(() -> analyseFile(phase, analysis, fileNode)));
+                }
+            }
+
+            for (Future<?> future : futures) {
+                await(future);
+            }
+        }
+
+        for (FileNode fileNode : fileNodes) {
+            List<Definitions> fileDefinitions = definitions.computeIfAbsent(fileNode, (k) -> new ArrayList<>());
+            Definitions found = analyses.containsKey(fileNode)
+                    ? new Definitions(analyses.get(fileNode))
+                    : reused.get(fileNode).get(fileDefinitions.size());
+            fileDefinitions.add(found);
+
+            functions.addAll(found.functions);
+            classes.addAll(found.classes);
+            constructors.addAll(found.constructors);
+            globalVariables.addAll(found.globalVariables);
+        }
+    }
+
+    // Times of all phases of a file add up to one record of the file.
+    private void analyseFile(BiConsumer<SemanticAnalysis, FileNode> phase, SemanticAnalysis analysis, FileNode fileNode) {
+        try (Stats.Span span = stats.file("semantic", fileNode.getPath())) {
+            phase.accept(analysis, fileNode);
+        }
+    }
+
+    private static void await(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(interruptedException);
+        } catch (ExecutionException executionException) {
+            Throwable cause = executionException.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
     private void findMainFunction() {
         for (FileNode fileNode : fileNodes) {
+            if (reused.containsKey(fileNode)) {
+                continue;
+            }
+
             for (FunctionDefinitionNode functionDefinition : fileNode
                     .getStatementNodes()
                     .stream()
@@ -167,15 +358,38 @@ public class SemanticAnalysis {
         }
 
         Collections.reverse(path);
-        String absolutePath = Paths.get(rootPath, path.toArray(String[]::new)).toString();
 
-        System.out.println("Touched files: " + fileNodes.stream()
-                .map(FileNode::getPath)
-                .collect(Collectors.joining("\n")));
-        return fileNodes.stream()
-                .filter(f -> f.getPath().endsWith(String.join("/", path)))
-                .findFirst()
-                .orElseThrow(() -> new IllegalArgumentException("Cannot find file " + path));
+        if (verbose) {
+            System.out.println("Touched files: " + fileNodes.stream()
+                    .map(FileNode::getPath)
+                    .collect(Collectors.joining("\n")));
+        }
+
+        FileNode file = importIndex.get(String.join("/", path));
+        if (file == null) {
+            throw new IllegalArgumentException("Cannot find file " + path);
+        }
+        return file;
+    }
+
+    // An import names the trailing components of a file path, so every trailing part of every path
+    // is a key ("quickSort", "quick/quickSort", "sort/quick/quickSort", ...). Files earlier in the
+    // list win, like the first match of the former scan.
+    private static Map<String, FileNode> buildImportIndex(List<FileNode> fileNodes) {
+        Map<String, FileNode> index = new HashMap<>();
+
+        for (FileNode fileNode : fileNodes) {
+            Path path = Paths.get(fileNode.getPath()).normalize();
+            String key = null;
+
+            for (int i = path.getNameCount() - 1; i >= 0; i--) {
+                String name = path.getName(i).toString();
+                key = key == null ? name : name + "/" + key;
+                index.putIfAbsent(key, fileNode);
+            }
+        }
+
+        return index;
     }
 
     private int compareNode(AstNode n1, AstNode n2) {
@@ -188,14 +402,14 @@ public class SemanticAnalysis {
         } else if (n2 instanceof ClassStatementNode) {
             return 1;
         } else {
-            return n1.hashCode() - n2.hashCode();
+            return 0;
         }
     }
 
     private void analyseDefinitionsStart(FileNode fileNode) {
         fileNode.getStatementNodes().removeIf(s -> s instanceof EmptyStatementNode);
 
-        Scope scope = new Scope(null);
+        Scope scope = new Scope(names.get(fileNode));
         fileNode.setScope(scope);
         scope.setOwner(fileNode);
 
@@ -238,6 +452,19 @@ public class SemanticAnalysis {
         }
     }
 
+    private void analyseDefinitionTypes(FileNode fileNode) {
+        Scope scope = fileNode.getScope();
+        for (StatementNode node : fileNode.getStatementNodes()) {
+            if (node instanceof ClassStatementNode) {
+                analyseClassInGlobalTypes((ClassStatementNode) node);
+            } else if (node instanceof InterfaceStatementNode) {
+                analyseInterfaceInGlobalTypes((InterfaceStatementNode) node);
+            } else if (node instanceof DeclarationStatementNode) {
+                analyseType(((DeclarationStatementNode) node).getTypeNode(), scope);
+            }
+        }
+    }
+
     private void analyseDefinitionsEnd(FileNode fileNode) {
         Scope scope = fileNode.getScope();
         for (StatementNode node : fileNode.getStatementNodes()) {
@@ -261,6 +488,7 @@ public class SemanticAnalysis {
         } else if (node instanceof ClassStatementNode) {
             analyseClassInGlobalStart((ClassStatementNode) node, scope);
             analyseClassInGlobalMiddle((ClassStatementNode) node, scope);
+            analyseClassInGlobalTypes((ClassStatementNode) node);
             analyseClassInGlobalEnd((ClassStatementNode) node, scope);
         } else if (node instanceof CompoundStatementNode) {
             analyseCompound((CompoundStatementNode) node, scope);
@@ -273,6 +501,7 @@ public class SemanticAnalysis {
         } else if (node instanceof InterfaceStatementNode) {
             analyseInterfaceInGlobalStart((InterfaceStatementNode) node, scope);
             analyseInterfaceInGlobalMiddle((InterfaceStatementNode) node, scope);
+            analyseInterfaceInGlobalTypes((InterfaceStatementNode) node);
             analyseInterfaceInGlobalEnd((InterfaceStatementNode) node, scope);
         } else if (node instanceof ReturnStatementNode) {
             analyseReturn((ReturnStatementNode) node, scope);
@@ -357,6 +586,21 @@ public class SemanticAnalysis {
         }
     }
 
+    private void analyseClassInGlobalTypes(ClassStatementNode classNode) {
+        for (StatementNode node : classNode.getTranslationNode().getStatements()) {
+            if (node instanceof ClassStatementNode) {
+                analyseClassInGlobalTypes((ClassStatementNode) node);
+            } else if (node instanceof InterfaceStatementNode) {
+                analyseInterfaceInGlobalTypes((InterfaceStatementNode) node);
+            } else if (node instanceof DeclarationStatementNode) {
+                analyseType(((DeclarationStatementNode) node).getTypeNode(), node.getScope());
+            } else if (node instanceof ConstructorDefinitionNode) {
+                ((ConstructorDefinitionNode) node).getFunctionNode().getParametersNode().getParameters()
+                        .forEach(p -> analyseType(p.getTypeNode(), node.getScope()));
+            }
+        }
+    }
+
     private void analyseClassInGlobalEnd(ClassStatementNode classNode, Scope parentScope) {
         for (StatementNode node : classNode.getTranslationNode().getStatements()) {
             if (node instanceof ClassStatementNode) {
@@ -441,10 +685,7 @@ public class SemanticAnalysis {
         Scope constructorScope = new Scope(scope);
         constructorScope.setOwner(node);
         node.getFunctionNode().getParametersNode().getParameters()
-                .forEach(p -> {
-                    analyseType(p.getTypeNode(), scope);
-                    constructorScope.addDeclaration(p);
-                });
+                .forEach(constructorScope::addDeclaration);
         analyseStatement(node.getStatementNode(), constructorScope);
         constructors.add(node);
     }
@@ -513,8 +754,6 @@ public class SemanticAnalysis {
     }
 
     private void analyseDeclarationInGlobalEnd(DeclarationStatementNode node, Scope parentScope) {
-        analyseType(node.getTypeNode(), parentScope);
-
         if (node.getExpressionNode() != null) {
             node.getExpressionNode().setScope(parentScope);
             analyseExpression(node.getExpressionNode(), parentScope);
@@ -637,6 +876,16 @@ public class SemanticAnalysis {
                 .collect(Collectors.toList());
     }
 
+    private void analyseInterfaceInGlobalTypes(InterfaceStatementNode interfaceStatementNode) {
+        for (StatementNode node : interfaceStatementNode.getTranslationNode().getStatements()) {
+            if (node instanceof ClassStatementNode) {
+                analyseClassInGlobalTypes((ClassStatementNode) node);
+            } else if (node instanceof InterfaceStatementNode) {
+                analyseInterfaceInGlobalTypes((InterfaceStatementNode) node);
+            }
+        }
+    }
+
     private void analyseInterfaceInGlobalEnd(InterfaceStatementNode interfaceStatementNode, Scope parentScope) {
         for (StatementNode node : interfaceStatementNode.getTranslationNode().getStatements()) {
             if (node instanceof ClassStatementNode) {
@@ -733,7 +982,7 @@ public class SemanticAnalysis {
         } else if (expressionNode instanceof FloatConstantExpressionNode) {
             analyseFloatConstantExpression((FloatConstantExpressionNode) expressionNode);
         } else if (expressionNode instanceof StringConstantExpressionNode) {
-            analyseStringConstantExpressionNode((StringConstantExpressionNode) expressionNode);
+            analyseStringConstantExpressionNode((StringConstantExpressionNode) expressionNode, parentScope);
         } else if (expressionNode instanceof NullConstantExpressionNode) {
             analyseNullConstantExpression((NullConstantExpressionNode) expressionNode);
         } else if (expressionNode instanceof ArrayConstructorExpressionNode) {
@@ -767,11 +1016,21 @@ public class SemanticAnalysis {
         }
     }
 
-    private void analyseStringConstantExpressionNode(StringConstantExpressionNode expressionNode) {
-        ClassStatementNode classStatementNode = classes.stream().filter(c ->
+    // Strings are objects of the String class of whichever file defines it, the file depends on that
+    // one as if it imported it.
+    private void analyseStringConstantExpressionNode(StringConstantExpressionNode expressionNode, Scope parentScope) {
+        ClassStatementNode classStatementNode = Stream.concat(knownClasses.stream(), classes.stream()).filter(c ->
                         c.getIdentifierNode().getName().endsWith("_String"))
                 .findFirst()
                 .orElseThrow();
+
+        FileNode fileNode = fileOf(parentScope);
+        FileNode stringFile = fileOf(classStatementNode.getScope());
+        List<FileNode> imports = importedFiles.computeIfAbsent(fileNode, (k) -> new ArrayList<>());
+        if (stringFile != fileNode && !imports.contains(stringFile)) {
+            imports.add(stringFile);
+        }
+
         ObjectTypeNode objectTypeNode = new ObjectTypeNode(classStatementNode.getIdentifierNode());
         objectTypeNode.setDefinition(classStatementNode);
         expressionNode.setResultType(objectTypeNode);
@@ -784,6 +1043,13 @@ public class SemanticAnalysis {
         expressionNode.setResultType(objectTypeNode);
     }
 
+    private static FileNode fileOf(Scope scope) {
+        while (scope.getParentScope() != null) {
+            scope = scope.getParentScope();
+        }
+        return (FileNode) scope.getOwner();
+    }
+
     private ClassStatementNode findClass(Scope parentScope) {
         if (parentScope.getOwner() instanceof ClassStatementNode) {
             return (ClassStatementNode) parentScope.getOwner();
@@ -0,0 +1,24 @@
+package lang.stats;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Flight recorder event for every measured span, recorded whether or not --stats is given.
+@Name("lang.CompilerSpan")
+@Label("Compiler Span")
+@Category("Lang Compiler")
+@Description("A phase of the compiler, or the part of a phase spent on one file or function")
+class SpanEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Kind")
+    String kind;
+
+    @Label("Name")
+    String name;
+}
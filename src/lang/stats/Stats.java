@@ -0,0 +1,314 @@
+package lang.stats;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+// Wall time, CPU time and allocated bytes of the phases of one compilation, and of the files and
+// functions within them. CPU time and allocations are counted per thread: a phase adds what its
+// files and functions used on other threads to what it used on its own thread. The peak heap of a
+// phase is read from the heap pools, which are shared by everything running in the process.
+public class Stats {
+
+    public static final String PHASE = "phase";
+    public static final String FILE = "file";
+    public static final String FUNCTION = "function";
+    public static final String PASS = "pass";
+
+    private static final int TOP_COUNT = 10;
+
+    public static class Record {
+        private final String kind;
+        private final String phase;
+        private final String name;
+        private int count;
+        private long wallNanos;
+        private long cpuNanos;
+        private long allocatedBytes;
+        private long peakHeapBytes;
+
+        private Record(String kind, String phase, String name) {
+            this.kind = kind;
+            this.phase = phase;
+            this.name = name;
+        }
+
+        public String getKind() {
+            return kind;
+        }
+
+        public String getPhase() {
+            return phase;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        public long getCpuNanos() {
+            return cpuNanos;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public long getPeakHeapBytes() {
+            return peakHeapBytes;
+        }
+    }
+
+    // Measures the block of the try-with-resources statement it is opened in, the block never uses
+    // the span itself. javac warns of every such unused resource, so the build turns the [try] lint
+    // off in pom.xml; the other lints stay on.
+    public class Span implements AutoCloseable {
+        private final String kind;
+        private final String phase;
+        private final String name;
+        private final SpanEvent event;
+        private final long thread;
+        private final long wall;
+        private final long cpu;
+        private final long allocated;
+
+        private Span(String kind, String phase, String name) {
+            this.kind = kind;
+            this.phase = phase;
+            this.name = name;
+            this.event = new SpanEvent();
+            this.thread = Thread.currentThread().getId();
+
+            if (enabled) {
+                if (kind.equals(PHASE)) {
+                    openPhases.put(phase, this);
+                    ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+                }
+                wall = System.nanoTime();
+                cpu = Threads.cpuTime();
+                allocated = Threads.allocatedBytes();
+            } else {
+                wall = 0;
+                cpu = 0;
+                allocated = 0;
+            }
+
+            event.begin();
+        }
+
+        @Override
+        public void close() {
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = phase;
+                event.kind = kind;
+                event.name = name;
+                event.commit();
+            }
+
+            if (!enabled) {
+                return;
+            }
+
+            long wallNanos = System.nanoTime() - wall;
+            long cpuNanos = Threads.cpuTime() - cpu;
+            long allocatedBytes = Threads.allocatedBytes() - allocated;
+
+            if (kind.equals(PHASE)) {
+                openPhases.remove(phase);
+                add(kind, phase, name, 1, wallNanos, cpuNanos, allocatedBytes, peakHeap());
+            } else {
+                add(kind, phase, name, 1, wallNanos, cpuNanos, allocatedBytes, 0);
+
+                Span phaseSpan = openPhases.get(phase);
+                if (phaseSpan != null && phaseSpan.thread != thread) {
+                    add(PHASE, phase, phase, 0, 0, cpuNanos, allocatedBytes, 0);
+                }
+            }
+        }
+    }
+
+    private final boolean enabled;
+    private final Map<String, Record> records;
+    private final Map<String, Span> openPhases;
+
+    public Stats(boolean enabled) {
+        this.enabled = enabled;
+        this.records = new LinkedHashMap<>();
+        this.openPhases = new ConcurrentHashMap<>();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Span phase(String phase) {
+        return new Span(PHASE, phase, phase);
+    }
+
+    public Span file(String phase, String file) {
+        return new Span(FILE, phase, file);
+    }
+
+    public Span function(String phase, String function) {
+        return new Span(FUNCTION, phase, function);
+    }
+
+    public Span pass(String phase, String pass) {
+        return new Span(PASS, phase, pass);
+    }
+
+    // Records in the order they were first opened.
+    public synchronized List<Record> getRecords() {
+        return new ArrayList<>(records.values());
+    }
+
+    public String report() {
+        List<Record> records = getRecords();
+        StringBuilder builder = new StringBuilder();
+
+        builder.append(String.format("%-24s %10s %10s %14s %14s%n",
+                "phase", "wall ms", "cpu ms", "allocated MB", "peak heap MB"));
+        for (Record record : records) {
+            if (record.kind.equals(PHASE)) {
+                builder.append(String.format("%-24s %10.2f %10.2f %14.2f %14.2f%n",
+                        record.phase,
+                        millis(record.wallNanos),
+                        millis(record.cpuNanos),
+                        megabytes(record.allocatedBytes),
+                        megabytes(record.peakHeapBytes)));
+            }
+        }
+
+        appendPasses(builder, records);
+        appendTop(builder, records, FILE);
+        appendTop(builder, records, FUNCTION);
+
+        return builder.toString();
+    }
+
+    public String toJson() {
+        StringBuilder builder = new StringBuilder("{\n  \"records\": [");
+
+        String separator = "\n";
+        for (Record record : getRecords()) {
+            builder.append(separator)
+                    .append("    {\"kind\": ").append(quote(record.kind))
+                    .append(", \"phase\": ").append(quote(record.phase))
+                    .append(", \"name\": ").append(quote(record.name))
+                    .append(", \"count\": ").append(record.count)
+                    .append(", \"wallNanos\": ").append(record.wallNanos)
+                    .append(", \"cpuNanos\": ").append(record.cpuNanos)
+                    .append(", \"allocatedBytes\": ").append(record.allocatedBytes);
+            if (record.kind.equals(PHASE)) {
+                builder.append(", \"peakHeapBytes\": ").append(record.peakHeapBytes);
+            }
+            builder.append("}");
+            separator = ",\n";
+        }
+
+        return builder.append("\n  ]\n}\n").toString();
+    }
+
+    private synchronized void add(String kind,
+                                  String phase,
+                                  String name,
+                                  int count,
+                                  long wallNanos,
+                                  long cpuNanos,
+                                  long allocatedBytes,
+                                  long peakHeapBytes) {
+        Record record = records.computeIfAbsent(kind + " " + phase + " " + name,
+                (k) -> new Record(kind, phase, name));
+
+        record.count += count;
+        record.wallNanos += wallNanos;
+        record.cpuNanos += cpuNanos;
+        record.allocatedBytes += allocatedBytes;
+        record.peakHeapBytes = Math.max(record.peakHeapBytes, peakHeapBytes);
+    }
+
+    // Passes and analyses in the order they first ran, with the number of times they ran.
+    private static void appendPasses(StringBuilder builder, List<Record> records) {
+        Map<String, List<Record>> byPhase = records.stream()
+                .filter(record -> record.kind.equals(PASS))
+                .collect(Collectors.groupingBy(Record::getPhase, LinkedHashMap::new, Collectors.toList()));
+
+        for (Map.Entry<String, List<Record>> phase : byPhase.entrySet()) {
+            builder.append(String.format("%npasses of %s%n", phase.getKey()));
+
+            phase.getValue().forEach(record -> builder.append(String.format("  %10.2f ms %10.2f cpu ms %10.2f MB %6dx  %s%n",
+                    millis(record.wallNanos),
+                    millis(record.cpuNanos),
+                    megabytes(record.allocatedBytes),
+                    record.count,
+                    record.name)));
+        }
+    }
+
+    private static void appendTop(StringBuilder builder, List<Record> records, String kind) {
+        Map<String, List<Record>> byPhase = records.stream()
+                .filter(record -> record.kind.equals(kind))
+                .collect(Collectors.groupingBy(Record::getPhase, LinkedHashMap::new, Collectors.toList()));
+
+        for (Map.Entry<String, List<Record>> phase : byPhase.entrySet()) {
+            builder.append(String.format("%nslowest %s of %s (%d in all)%n",
+                    kind.equals(FILE) ? "files" : "functions", phase.getKey(), phase.getValue().size()));
+
+            phase.getValue().stream()
+                    .sorted(Comparator.comparingLong(Record::getWallNanos).reversed())
+                    .limit(TOP_COUNT)
+                    .forEach(record -> builder.append(String.format("  %10.2f ms %10.2f cpu ms %10.2f MB  %s%n",
+                            millis(record.wallNanos),
+                            millis(record.cpuNanos),
+                            megabytes(record.allocatedBytes),
+                            record.name)));
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static double megabytes(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    private static String quote(String value) {
+        StringBuilder builder = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
+}
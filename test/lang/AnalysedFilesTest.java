@@ -0,0 +1,166 @@
+package lang;
+
+import lang.build.AnalysedFiles;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// A watched build takes the files a change does not affect from the last build, its output must be
+// the one of a build from scratch.
+class AnalysedFilesTest {
+
+    @TempDir
+    Path workingDirectory;
+
+    private Path sources;
+    private AnalysedFiles analysedFiles;
+
+    @BeforeEach
+    void writeSources() throws Exception {
+        Builds.copyLibrary(workingDirectory);
+        sources = workingDirectory.resolve("sources");
+        analysedFiles = new AnalysedFiles();
+
+        Builds.write(sources.resolve("geo/shapes"), List.of(
+                "class Point",
+                "    int x",
+                "    int y",
+                "",
+                "    (int x, int y) ->",
+                "        this.x = x",
+                "        this.y = y",
+                "",
+                "class Line",
+                "    Point p",
+                "    Point q",
+                "",
+                "    (Point p, Point q) ->",
+                "        this.p = p",
+                "        this.q = q"));
+        Builds.write(sources.resolve("text/greeting"), List.of(
+                "import lang.lib",
+                "",
+                "() void greet ->",
+                "    println(\"Hello\")"));
+        writeMain("l.p.x");
+    }
+
+    @Test
+    void changedFilesGiveTheOutputOfAFullBuild() throws Exception {
+        assertEquals(build(), fullBuild());
+
+        writeMain("l.q.y");
+        assertEquals(build(), fullBuild());
+
+        Builds.write(sources.resolve("geo/shapes"), List.of(
+                "class Point",
+                "    int y",
+                "    int x",
+                "",
+                "    (int x, int y) ->",
+                "        this.x = x",
+                "        this.y = y",
+                "",
+                "class Line",
+                "    Point q",
+                "    Point p",
+                "",
+                "    (Point p, Point q) ->",
+                "        this.p = p",
+                "        this.q = q"));
+        assertEquals(build(), fullBuild());
+
+        writeMain("l.p.y");
+        assertEquals(build(), fullBuild());
+    }
+
+    @Test
+    void onlyAffectedFilesAreAnalysedAgain() throws Exception {
+        build();
+
+        writeMain("l.q.y");
+        build();
+        assertEquals(Set.of(path("main")), analysedFiles.getAffectedFiles());
+
+        Builds.write(sources.resolve("geo/shapes"), List.of(
+                "class Point",
+                "    int x",
+                "    int y",
+                "",
+                "    (int x, int y) ->",
+                "        this.x = x",
+                "        this.y = y",
+                "",
+                "class Line",
+                "    Point p",
+                "    Point q",
+                "",
+                "    (Point p, Point q) ->",
+                "        this.q = q",
+                "        this.p = p"));
+        build();
+        assertEquals(Set.of(path("geo/shapes"), path("main")), analysedFiles.getAffectedFiles());
+
+        build();
+        assertEquals(Set.of(), analysedFiles.getAffectedFiles());
+    }
+
+    @Test
+    void failedBuildKeepsTheLastOne() throws Exception {
+        build();
+
+        writeMain("l.z");
+        assertThrows(RuntimeException.class, this::build);
+
+        writeMain("l.q.x");
+        assertEquals(build(), fullBuild());
+        assertEquals(Set.of(path("main")), analysedFiles.getAffectedFiles());
+    }
+
+    // Translation does not change the trees, a build taking every file gives the same output again.
+    @Test
+    void unchangedExamplesAreTakenWhole() throws Exception {
+        for (Path example : Builds.list(Path.of("examples"))) {
+            AnalysedFiles examples = new AnalysedFiles();
+            String first;
+            try {
+                first = Builds.build(workingDirectory, examples, "-i", example.toAbsolutePath().toString());
+            } catch (RuntimeException exception) {
+                continue;
+            }
+            assertEquals(first, Builds.build(workingDirectory, examples, "-i", example.toAbsolutePath().toString()),
+                    example.toString());
+            assertEquals(Set.of(), examples.getAffectedFiles());
+        }
+    }
+
+    private void writeMain(String result) throws Exception {
+        Builds.write(sources.resolve("main"), List.of(
+                "import geo.shapes",
+                "import text.greeting",
+                "",
+                "() int main ->",
+                "    greet()",
+                "    Line l = new Line(new Point(1, 2), new Point(3, 4))",
+                "    return " + result));
+    }
+
+    private String path(String file) {
+        return sources.resolve(file).toAbsolutePath().toString();
+    }
+
+    private String build() throws Exception {
+        return Builds.build(workingDirectory, analysedFiles, "-i", sources.toString());
+    }
+
+    private String fullBuild() throws Exception {
+        return Builds.build(workingDirectory, "-i", sources.toString());
+    }
+}
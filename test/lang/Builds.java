@@ -0,0 +1,64 @@
+package lang;
+
+import lang.build.AnalysedFiles;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Builds run in a working directory of their own, with the standard library in lang/lib where
+// every build reads it from.
+public final class Builds {
+
+    private Builds() {
+    }
+
+    public static void copyLibrary(Path workingDirectory) throws IOException {
+        Path library = workingDirectory.resolve("lang/lib");
+        Files.createDirectories(library.getParent());
+        Files.copy(Path.of("resources", "stdlib"), library, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public static void write(Path file, List<String> lines) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+
+    public static List<Path> list(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.sorted().collect(Collectors.toList());
+        }
+    }
+
+    // Runs the build and returns the text of out.ll, or with -split the manifest followed by the
+    // modules it lists.
+    public static String build(Path workingDirectory, String... args) throws Exception {
+        return build(workingDirectory, null, args);
+    }
+
+    public static String build(Path workingDirectory, AnalysedFiles analysedFiles, String... args) throws Exception {
+        CommandLine cmd = new DefaultParser().parse(Main.createOptions(), args);
+        Main.build(cmd, workingDirectory.toFile(), analysedFiles);
+        if (!cmd.hasOption(Main.SPLIT)) {
+            return read(workingDirectory.resolve("out.ll"));
+        }
+
+        Path modules = workingDirectory.resolve("out.modules");
+        StringBuilder output = new StringBuilder(read(modules.resolve("modules")));
+        for (String line : Files.readAllLines(modules.resolve("modules"), StandardCharsets.UTF_8)) {
+            output.append(read(modules.resolve(line.substring(line.indexOf(' ') + 1)))).append('\n');
+        }
+        return output.toString();
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+}
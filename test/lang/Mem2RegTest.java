@@ -0,0 +1,203 @@
+package lang;
+
+import lang.ir.BasicBlock;
+import lang.ir.Command;
+import lang.ir.Function;
+import lang.ir.IntValue;
+import lang.ir.LocalVariableValue;
+import lang.ir.Operation;
+import lang.ir.Return;
+import lang.ir.StructType;
+import lang.ir.Type;
+import lang.ir.VariableValue;
+import lang.opt.AnalysisManager;
+import lang.opt.Mem2Reg;
+import lang.opt.Pass;
+import lang.stats.Stats;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Locals kept in stack slots at -O0 are values at -O1, joined by phis where control flow meets.
+class Mem2RegTest {
+
+    private static final Pattern LABEL = Pattern.compile("^\\s*([\\w.$]+):$");
+    private static final Pattern TARGET = Pattern.compile("label %([\\w.$]+)");
+    private static final Pattern INCOMING = Pattern.compile("\\[ [^,]+, %([\\w.$]+) ]");
+
+    @TempDir
+    Path workingDirectory;
+
+    private Path source;
+
+    @BeforeEach
+    void writeSources() throws Exception {
+        Builds.copyLibrary(workingDirectory);
+        source = workingDirectory.resolve("sources/main");
+        Builds.write(source, List.of(
+                "(int n) int loop ->",
+                "    int sum = 0",
+                "    int i = 0",
+                "    while i < n",
+                "        sum = sum + i",
+                "        i++",
+                "    return sum",
+                "",
+                "(int n) int diamond ->",
+                "    int r = 0",
+                "    if n > 0",
+                "        r = 1",
+                "    else",
+                "        r = 2",
+                "    return r",
+                "",
+                "(int n) int partial ->",
+                "    if n > 0",
+                "        return 1",
+                "",
+                "() int main ->",
+                "    return loop(10) + diamond(1) + partial(1)"));
+    }
+
+    @Test
+    void loopAndDiamondKeepNoLocalsInMemory() throws Exception {
+        String unoptimized = Builds.build(workingDirectory, "-i", source.toString(), "-O0");
+        String optimized = Builds.build(workingDirectory, "-i", source.toString(), "-O1");
+
+        for (String name : List.of("loop", "diamond")) {
+            assertTrue(function(unoptimized, name).contains("alloca"), name);
+
+            String body = function(optimized, name);
+            assertFalse(body.contains("alloca"), body);
+            assertFalse(body.contains("load"), body);
+            assertFalse(body.contains("store"), body);
+            assertTrue(body.contains("phi"), body);
+        }
+    }
+
+    // The return slot of partial is only stored to when n > 0, the other edge brings undef.
+    @Test
+    void loadWithoutStoreIsUndef() throws Exception {
+        String body = function(Builds.build(workingDirectory, "-i", source.toString(), "-O1"), "partial");
+
+        assertTrue(body.contains("phi i32 [ undef, %"), body);
+        assertFalse(body.contains("alloca"), body);
+    }
+
+    @Test
+    void phisTakeOneValueFromEveryPredecessor() throws Exception {
+        assertPhisMatchPredecessors(Builds.build(workingDirectory, "-i", source.toString(), "-O1"), "main");
+
+        for (Path example : Builds.list(Path.of("examples"))) {
+            String output;
+            try {
+                output = Builds.build(workingDirectory, "-i", example.toAbsolutePath().toString(), "-O1");
+            } catch (RuntimeException exception) {
+                continue;
+            }
+            assertPhisMatchPredecessors(output, example.toString());
+        }
+    }
+
+    // A slot whose address is passed on and a slot of a struct stay in memory, a scalar next to
+    // them is promoted.
+    @Test
+    void addressTakenAndStructLocalsStayInMemory() {
+        VariableValue escaping = new VariableValue("escaping", Type.INT_32);
+        VariableValue struct = new VariableValue("struct", new StructType("S", List.of(), 0));
+        VariableValue scalar = new VariableValue("scalar", Type.INT_32);
+        LocalVariableValue loaded = new LocalVariableValue(0, Type.INT_32);
+
+        Function function = new Function("f", new CompilerSession());
+        function.setParameterTypes(List.of());
+        function.setResultType(Type.INT_32);
+        BasicBlock entry = function.appendBlock("entry");
+
+        Command escapingAlloc = new Command(escaping, Operation.ALLOC, List.of());
+        Command structAlloc = new Command(struct, Operation.ALLOC, List.of());
+        Command scalarAlloc = new Command(scalar, Operation.ALLOC, List.of());
+        entry.addCommand(escapingAlloc);
+        entry.addCommand(structAlloc);
+        entry.addCommand(scalarAlloc);
+        entry.addCommand(new Command(escaping, Operation.STORE, List.of(new IntValue(1))));
+        entry.addCommand(new Command(null, Operation.CALL, List.of(new Function("g", new CompilerSession()), escaping)));
+        entry.addCommand(new Command(struct, Operation.STORE, List.of(new VariableValue("other", struct.getType()))));
+        entry.addCommand(new Command(scalar, Operation.STORE, List.of(new IntValue(2))));
+        entry.addCommand(new Command(loaded, Operation.LOAD, List.of(scalar)));
+        entry.setTerminator(new Return(loaded));
+        function.updateEdges();
+
+        assertEquals(Pass.Change.COMMANDS, new Mem2Reg().run(function, new AnalysisManager(new Stats(false))));
+
+        List<Command> commands = entry.getCommands();
+        assertTrue(commands.contains(escapingAlloc));
+        assertTrue(commands.contains(structAlloc));
+        assertFalse(commands.contains(scalarAlloc));
+        assertEquals(5, commands.size(), commands.toString());
+        assertEquals(2, ((IntValue) ((Return) entry.getTerminator()).getValue()).getValue());
+    }
+
+    private static String function(String output, String name) {
+        Matcher matcher = Pattern.compile("(?ms)^define [^\\n]*@[\\w.$]*_" + name + "\\(.*?^}").matcher(output);
+        assertTrue(matcher.find(), name);
+        return matcher.group();
+    }
+
+    // Every phi names each predecessor of its block once, as LLVM requires.
+    private static void assertPhisMatchPredecessors(String output, String name) {
+        Matcher functions = Pattern.compile("(?ms)^define .*?^}").matcher(output);
+        while (functions.find()) {
+            List<String> blocks = new ArrayList<>();
+            Map<String, List<String>> lines = new HashMap<>();
+            Map<String, Set<String>> predecessors = new HashMap<>();
+
+            String current = null;
+            for (String line : functions.group().split("\n")) {
+                Matcher label = LABEL.matcher(line);
+                if (label.matches()) {
+                    current = label.group(1);
+                    blocks.add(current);
+                    lines.put(current, new ArrayList<>());
+                    predecessors.putIfAbsent(current, new LinkedHashSet<>());
+                } else if (current != null) {
+                    lines.get(current).add(line);
+                    if (line.trim().startsWith("br ")) {
+                        Matcher target = TARGET.matcher(line);
+                        while (target.find()) {
+                            predecessors.computeIfAbsent(target.group(1), (k) -> new LinkedHashSet<>()).add(current);
+                        }
+                    }
+                }
+            }
+
+            for (String block : blocks) {
+                for (String line : lines.get(block)) {
+                    if (!line.contains(" = phi ")) {
+                        continue;
+                    }
+                    List<String> incoming = new ArrayList<>();
+                    Matcher edge = INCOMING.matcher(line);
+                    while (edge.find()) {
+                        incoming.add(edge.group(1));
+                    }
+                    assertEquals(predecessors.get(block), Set.copyOf(incoming), name + ": " + line);
+                    assertEquals(incoming.size(), Set.copyOf(incoming).size(), name + ": " + line);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package lang;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// A build the cache has an entry for restores out.ll without parsing, the statistics of such a
+// build have no parse phase.
+class OutputCacheTest {
+
+    @TempDir
+    Path workingDirectory;
+
+    private Path source;
+
+    @BeforeEach
+    void writeSources() throws Exception {
+        Builds.copyLibrary(workingDirectory);
+        source = workingDirectory.resolve("sources/main");
+        Builds.write(source, List.of(
+                "() int main ->",
+                "    int sum = 0",
+                "    int i = 0",
+                "    while i < 10",
+                "        sum = sum + i",
+                "        i++",
+                "    return sum"));
+    }
+
+    @Test
+    void unchangedBuildIsRestored() throws Exception {
+        String first = build("-O0");
+        assertTrue(compiled());
+
+        assertEquals(first, build("-O0"));
+        assertFalse(compiled());
+
+        // The number of jobs does not change the output.
+        assertEquals(first, build("-O0", "-j", "1"));
+        assertFalse(compiled());
+    }
+
+    @Test
+    void changedOptionsBuildAgain() throws Exception {
+        String unoptimized = build("-O0");
+        String optimized = build("-O2");
+        assertTrue(compiled());
+        assertNotEquals(unoptimized, optimized);
+
+        assertEquals(unoptimized, build("-O0"));
+        assertFalse(compiled());
+        assertEquals(optimized, build("-O2"));
+        assertFalse(compiled());
+    }
+
+    @Test
+    void changedSourcesBuildAgain() throws Exception {
+        build("-O0");
+
+        Builds.write(source, List.of(
+                "() int main ->",
+                "    return 1"));
+        String changed = build("-O0");
+        assertTrue(compiled());
+        assertEquals(Builds.build(workingDirectory, "-i", source.toString()), changed);
+    }
+
+    private String build(String... options) throws Exception {
+        List<String> args = new ArrayList<>(List.of(
+                "-i", source.toString(), "--cache", "cache", "--statsJson", "stats.json"));
+        args.addAll(List.of(options));
+        return Builds.build(workingDirectory, args.toArray(String[]::new));
+    }
+
+    // Whether the last build parsed the sources.
+    private boolean compiled() throws Exception {
+        String stats = new String(Files.readAllBytes(workingDirectory.resolve("stats.json")), StandardCharsets.UTF_8);
+        return stats.contains("\"phase\": \"parse\"");
+    }
+}
@@ -0,0 +1,121 @@
+package lang;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+// Files are analysed and emitted in parallel, the output must not depend on the number of jobs.
+class ParallelBuildTest {
+
+    private static final int JOBS = 4;
+    private static final int SHAPES = 200;
+    private static final int FILES = 8;
+    private static final int REPEATS = 10;
+    private static final String ERROR = "error: ";
+
+    @TempDir
+    Path workingDirectory;
+
+    // Constructor parameters and fields of one file are read while the bodies of other files are
+    // analysed. The shapes are many, so that the files overlap even in a warm virtual machine.
+    @Test
+    void typesOfOtherFilesAreResolvedBeforeBodies() throws Exception {
+        Builds.copyLibrary(workingDirectory);
+        Path sources = workingDirectory.resolve("sources");
+
+        List<String> shapes = new ArrayList<>(List.of(
+                "class Point",
+                "    int x",
+                "    int y",
+                "",
+                "    (int x, int y) ->",
+                "        this.x = x",
+                "        this.y = y"));
+        for (int i = 0; i < SHAPES; i++) {
+            shapes.addAll(List.of(
+                    "",
+                    "class Line" + i,
+                    "    Point p",
+                    "    Point q",
+                    "",
+                    "    (Point p, Point q) ->",
+                    "        this.p = p",
+                    "        this.q = q"));
+        }
+        Builds.write(sources.resolve("geo/shapes"), shapes);
+
+        // The last lines are resolved last, they are constructed first.
+        for (int i = 0; i < FILES; i++) {
+            List<String> lines = new ArrayList<>(List.of(
+                    "import geo.shapes",
+                    "",
+                    "() int lines" + i + " ->",
+                    "    Point a = new Point(1, 2)",
+                    "    Point b = new Point(3, 4)",
+                    "    int sum = 0"));
+            for (int j = SHAPES - 1; j >= 0; j--) {
+                lines.add("    sum = sum + new Line" + j + "(a, b).p.x");
+            }
+            lines.add("    return sum");
+            Builds.write(sources.resolve("lines/lines" + i), lines);
+        }
+
+        Builds.write(sources.resolve("main"), List.of(
+                "import geo.shapes",
+                "import lines.lines0",
+                "",
+                "() int main ->",
+                "    Point a = new Point(1, 2)",
+                "    Point b = new Point(3, 4)",
+                "    Line0 l = new Line0(a, b)",
+                "    return l.p.x + l.q.y + lines0()"));
+
+        String expected = build(sources, 1);
+        for (int i = 0; i < REPEATS; i++) {
+            assertEquals(expected, build(sources, JOBS));
+        }
+    }
+
+    // Every example at every optimization level, in one module and split. An example the
+    // unoptimized build rejects must be rejected with the same error, any other must build.
+    @ParameterizedTest
+    @ValueSource(strings = {"-O0", "-O1", "-O2", "-O3", "-O0 -split", "-O1 -split", "-O3 -split"})
+    void examplesDoNotDependOnJobs(String options) throws Exception {
+        Builds.copyLibrary(workingDirectory);
+        for (Path example : Builds.list(Path.of("examples"))) {
+            String unoptimized = outcome(example, 1, "-O0");
+            String serial = outcome(example, 1, options.split(" "));
+
+            if (unoptimized.startsWith(ERROR)) {
+                assertEquals(unoptimized, serial, example.toString());
+            } else {
+                assertFalse(serial.startsWith(ERROR), example + ": " + serial);
+            }
+            assertEquals(serial, outcome(example, JOBS, options.split(" ")), example.toString());
+        }
+    }
+
+    // The output of the build, or the error it stopped with.
+    private String outcome(Path input, int jobs, String... options) throws Exception {
+        try {
+            return build(input, jobs, options);
+        } catch (RuntimeException exception) {
+            return ERROR + exception;
+        }
+    }
+
+    private String build(Path input, int jobs, String... options) throws Exception {
+        List<String> args = new ArrayList<>(List.of(
+                "-i", input.toAbsolutePath().toString(), "-j", String.valueOf(jobs)));
+        args.addAll(List.of(options));
+        return Builds.build(workingDirectory, args.toArray(String[]::new));
+    }
+}
@@ -0,0 +1,74 @@
+package lang.build;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Outputs are written atomically but get the permissions of any other new file.
+class BuildFilesTest {
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void requirePosix() {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+    }
+
+    @Test
+    void newFilesGetTheDefaultPermissions() throws Exception {
+        Path reference = Files.createFile(directory.resolve("reference"));
+
+        BuildFiles.write(directory.resolve("out.ll"), "text");
+        BuildFiles.write(directory.resolve("stats.json"), (writer) -> writer.write("{}"));
+
+        assertEquals(permissions(reference), permissions(directory.resolve("out.ll")));
+        assertEquals(permissions(reference), permissions(directory.resolve("stats.json")));
+    }
+
+    @Test
+    void replacedFilesKeepTheirPermissions() throws Exception {
+        Path output = directory.resolve("out.ll");
+        BuildFiles.write(output, "old");
+        Files.setPosixFilePermissions(output, PosixFilePermissions.fromString("rw-r-----"));
+
+        BuildFiles.write(output, "new");
+
+        assertEquals("rw-r-----", PosixFilePermissions.toString(permissions(output)));
+        assertEquals("new", Files.readString(output));
+    }
+
+    @Test
+    void restoredProgramsCanBeRunByWhoeverCanReadThem() throws Exception {
+        Path program = directory.resolve("program");
+        BuildFiles.write(program, "binary");
+        Files.setPosixFilePermissions(program, PosixFilePermissions.fromString("rwxr-xr-x"));
+
+        OutputCache cache = new OutputCache(directory.resolve("cache"));
+        cache.store("key", "program", program);
+        Path restored = directory.resolve("restored");
+        assertTrue(cache.restore("key", "program", restored));
+
+        Set<PosixFilePermission> permissions = permissions(restored);
+        assertTrue(permissions.contains(PosixFilePermission.OWNER_EXECUTE));
+        assertEquals(permissions.contains(PosixFilePermission.GROUP_READ),
+                permissions.contains(PosixFilePermission.GROUP_EXECUTE));
+        assertEquals(permissions.contains(PosixFilePermission.OTHERS_READ),
+                permissions.contains(PosixFilePermission.OTHERS_EXECUTE));
+    }
+
+    private static Set<PosixFilePermission> permissions(Path path) throws Exception {
+        return Files.getPosixFilePermissions(path);
+    }
+}
@@ -0,0 +1,83 @@
+package lang.daemon;
+
+import lang.Builds;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class CompileServerTest {
+
+    @TempDir
+    Path workingDirectory;
+
+    private Path secretFile;
+    private int port;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        Builds.copyLibrary(workingDirectory);
+        Builds.write(workingDirectory.resolve("sources/main"), List.of(
+                "() int main ->",
+                "    return 0"));
+
+        secretFile = workingDirectory.resolve("home/.lang/daemon.secret");
+        try (ServerSocket free = new ServerSocket(0)) {
+            port = free.getLocalPort();
+        }
+
+        Thread server = new Thread(() -> {
+            try {
+                new CompileServer(port, secretFile).serve();
+            } catch (IOException ioException) {
+                throw new IllegalStateException(ioException);
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+
+        // The secret is written before the server accepts the first request.
+        while (!Files.exists(secretFile)) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void secretIsOnlyReadableByTheUser() throws Exception {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+
+        assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(secretFile)));
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(secretFile.getParent())));
+    }
+
+    @Test
+    void buildsWithTheSecret() throws Exception {
+        assertEquals(0, compile(secretFile));
+        assertTrue(Files.exists(workingDirectory.resolve("out.ll")));
+    }
+
+    @Test
+    void refusesOtherSecrets() throws Exception {
+        Path wrong = workingDirectory.resolve("wrong.secret");
+        Secret.create(wrong);
+
+        assertEquals(1, compile(wrong));
+        assertFalse(Files.exists(workingDirectory.resolve("out.ll")));
+    }
+
+    private int compile(Path secret) throws IOException {
+        return CompileClient.compile(port, secret, workingDirectory.toFile(), new String[]{"-i", "sources"});
+    }
+}
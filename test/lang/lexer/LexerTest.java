@@ -0,0 +1,152 @@
+package lang.lexer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The scanner must give the tokens of the regular expression lexer it replaced, with the same
+// positions, for any input.
+class LexerTest {
+
+    // Pieces of source the generated inputs are made of. Quotes only come in pairs, the regular
+    // expressions backtrack for a long time over an unterminated one.
+    private static final List<String> PIECES = List.of(
+            "int", "integer", "long", "char", "bool", "void", "class", "interface", "import", "if", "elif",
+            "else", "while", "return", "break", "continue", "new", "this", "null", "true", "false",
+            "main", "x", "_y1", "Point", "0", "42", "3.14", "9999999999",
+            "\"text\"", "\"\"", "'a'", "'\\n'",
+            "(", ")", "[", "]", ",", ".", "->", "=", "==", "!=", "<", "<=", ">", ">=", "+", "++", "-", "--",
+            "*", "/", "%", "&&", "||", "!", "&", "|",
+            " ", "  ", "    ", "\t", "\n", "\r\n", "// comment\n", "#", "@", "$");
+
+    @Test
+    void examplesGiveTheSameTokens() throws IOException {
+        for (Path file : sources()) {
+            String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            assertEquals(regexTokens(text), tokens(text), file.toString());
+        }
+    }
+
+    @Test
+    void generatedInputsGiveTheSameTokens() {
+        Random random = new Random(1);
+        for (int i = 0; i < 2000; i++) {
+            String text = generate(random, random.nextInt(60));
+            assertEquals(regexTokens(text), tokens(text), text);
+        }
+    }
+
+    // The examples one after another, longer than the window the scanner reads the input in.
+    @Test
+    void longInputGivesTheSameTokens() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < 3 * 16 * 1024) {
+            for (Path file : sources()) {
+                builder.append(new String(Files.readAllBytes(file), StandardCharsets.UTF_8)).append('\n');
+            }
+        }
+        String text = builder.toString();
+        assertEquals(regexTokens(text), tokens(text));
+    }
+
+    @Test
+    void edgeCasesGiveTheSameTokens() {
+        for (String text : List.of(
+                "",
+                "   ",
+                "     x",
+                "// comment without newline",
+                "a\r\nb",
+                "\"unterminated",
+                "'",
+                "1.",
+                ".5",
+                "integer",
+                "x--y",
+                "a->b")) {
+            assertEquals(regexTokens(text), tokens(text), text);
+        }
+    }
+
+    // With the last quote found ahead of time, a symbol at the start of a long input does not make
+    // the scanner read the rest of it.
+    @Test
+    void symbolDoesNotReadTheRestOfTheInput() throws IOException {
+        String text = "'a' " + "x\n".repeat(512 * 1024);
+        int[] read = {0};
+        Reader reader = new FilterReader(new StringReader(text)) {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                int count = super.read(buffer, offset, length);
+                read[0] += Math.max(count, 0);
+                return count;
+            }
+        };
+
+        Lexer lexer = new Lexer(reader, Lexer.lastQuote(new StringReader(text)));
+        assertEquals(Token.TokenType.SYMBOL_CONSTANT, lexer.nextToken().getTokenType());
+        assertTrue(read[0] <= 64 * 1024, read[0] + " characters read");
+    }
+
+    private static String generate(Random random, int pieces) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < pieces; i++) {
+            builder.append(PIECES.get(random.nextInt(PIECES.size())));
+        }
+        return builder.toString();
+    }
+
+    // The tokens of both ways to find the last quote, which must agree.
+    private static List<String> tokens(String text) {
+        List<String> tokens = tokens(new Lexer(new StringReader(text)));
+        try {
+            assertEquals(tokens, tokens(new Lexer(new StringReader(text), Lexer.lastQuote(new StringReader(text)))), text);
+        } catch (IOException exception) {
+            throw new IllegalStateException(exception);
+        }
+        return tokens;
+    }
+
+    private static List<String> tokens(Lexer lexer) {
+        List<String> tokens = new ArrayList<>();
+        Token token;
+        do {
+            token = lexer.nextToken();
+            tokens.add(token.toString());
+        } while (token.getTokenType() != Token.TokenType.EOF);
+        return tokens;
+    }
+
+    private static List<String> regexTokens(String text) {
+        RegexLexer lexer = new RegexLexer(new StringReader(text));
+        List<String> tokens = new ArrayList<>();
+        Token token;
+        do {
+            token = lexer.nextToken();
+            tokens.add(token.toString());
+        } while (token.getTokenType() != Token.TokenType.EOF);
+        return tokens;
+    }
+
+    private static List<Path> sources() throws IOException {
+        try (Stream<Path> paths = Files.walk(Path.of("examples"))) {
+            List<Path> files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            files.add(Path.of("resources", "stdlib"));
+            return files;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package lang.lr;
+
+import lang.Builds;
+import lang.Main;
+import org.apache.commons.cli.DefaultParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// -emit bc must give the module of -emit ll, read back with llvm-dis. Needs LLVM on the PATH.
+class LlvmAssemblerTest {
+
+    @TempDir
+    Path workingDirectory;
+
+    @Test
+    void bitcodeDisassemblesToTheTextualModule() throws Exception {
+        assumeTrue(isInstalled(LlvmAssembler.ASSEMBLER) && isInstalled("llvm-dis"));
+
+        Builds.copyLibrary(workingDirectory);
+        for (Path example : Builds.list(Path.of("examples"))) {
+            String input = example.toAbsolutePath().toString();
+            try {
+                build("-i", input);
+            } catch (RuntimeException exception) {
+                continue;
+            }
+            build("-i", input, "-emit", "bc");
+
+            run(LlvmAssembler.ASSEMBLER, "out.ll", "-o", "expected.bc");
+            assertEquals(disassemble("expected.bc"), disassemble("out.bc"), example.toString());
+        }
+    }
+
+    private void build(String... args) throws Exception {
+        Main.build(new DefaultParser().parse(Main.createOptions(), args), workingDirectory.toFile(), null);
+    }
+
+    // Without the lines naming the file llvm-as read, a file or the pipe.
+    private String disassemble(String file) throws IOException, InterruptedException {
+        return run("llvm-dis", file, "-o", "-").lines()
+                .filter(line -> !line.startsWith("; ModuleID") && !line.startsWith("source_filename"))
+                .collect(Collectors.joining("\n"));
+    }
+
+    private String run(String... command) throws IOException, InterruptedException {
+        Path output = Files.createTempFile(workingDirectory, "run", ".txt");
+        Process process = new ProcessBuilder(command)
+                .directory(workingDirectory.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(output.toFile())
+                .start();
+        int exitCode = process.waitFor();
+        String text = new String(Files.readAllBytes(output), StandardCharsets.UTF_8);
+        assertEquals(0, exitCode, String.join(" ", command) + "\n" + text);
+        return text;
+    }
+
+    private static boolean isInstalled(String tool) {
+        try {
+            return new ProcessBuilder(List.of(tool, "--version")).start().waitFor() == 0;
+        } catch (IOException | InterruptedException exception) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package lang.opt;
+
+import lang.CompilerSession;
+import lang.ir.BasicBlock;
+import lang.ir.Branch;
+import lang.ir.Command;
+import lang.ir.ConditionalBranch;
+import lang.ir.Function;
+import lang.ir.IntValue;
+import lang.ir.LocalVariableValue;
+import lang.ir.Operation;
+import lang.ir.Return;
+import lang.ir.Type;
+import lang.ir.Value;
+import lang.ir.VariableValue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// After every change made through it, the index must tell the definitions and uses of an index
+// built from scratch:
+//
+//     entry:  %0 = add p, 1
+//             %1 = mul %0, %0
+//             store %1, v
+//             %2 = load v
+//             br %2, left, right
+//     left:   %3 = add %2, 1
+//             br join
+//     right:  %4 = sub %2, 1
+//             br join
+//     join:   %5 = phi [%3, left], [%4, right]
+//             return %5
+class DefUseTest {
+
+    private final VariableValue p = new VariableValue("p", Type.INT_32);
+    private final VariableValue v = new VariableValue("v", Type.INT_32);
+    private final List<LocalVariableValue> temporaries = new ArrayList<>();
+
+    private Function function;
+    private BasicBlock entry;
+    private BasicBlock left;
+    private BasicBlock right;
+    private BasicBlock join;
+    private Command phi;
+    private DefUse defUse;
+
+    @BeforeEach
+    void buildFunction() {
+        for (int i = 0; i < 7; i++) {
+            temporaries.add(new LocalVariableValue(i, Type.INT_32));
+        }
+
+        function = new Function("f", new CompilerSession());
+        function.setParameterTypes(List.of());
+        entry = function.appendBlock("entry");
+        left = function.appendBlock("left");
+        right = function.appendBlock("right");
+        join = function.appendBlock("join");
+
+        entry.addCommand(new Command(t(0), Operation.ADD, List.of(p, new IntValue(1))));
+        entry.addCommand(new Command(t(1), Operation.MUL, List.of(t(0), t(0))));
+        entry.addCommand(new Command(v, Operation.STORE, List.of(t(1))));
+        entry.addCommand(new Command(t(2), Operation.LOAD, List.of(v)));
+        entry.setTerminator(new ConditionalBranch(t(2), left, right));
+
+        left.addCommand(new Command(t(3), Operation.ADD, List.of(t(2), new IntValue(1))));
+        left.setTerminator(new Branch(join));
+        right.addCommand(new Command(t(4), Operation.SUB, List.of(t(2), new IntValue(1))));
+        right.setTerminator(new Branch(join));
+
+        phi = new Command(t(5), Operation.PHI, List.of(t(3), t(4)), List.of(left, right));
+        join.addCommand(phi);
+        join.setTerminator(new Return(t(5)));
+        function.updateEdges();
+
+        defUse = new DefUse(function);
+    }
+
+    @Test
+    void builtIndex() {
+        assertEquals(List.of("entry 1 0", "entry 1 1"), uses(defUse, t(0)));
+        assertEquals(List.of("entry 2 result", "entry 3 0"), uses(defUse, v));
+        assertEquals(List.of("entry terminator", "left 0 0", "right 0 0"), uses(defUse, t(2)));
+        assertEquals(entry.getCommands().get(3), defUse.getDefinition(t(2)));
+        assertEquals(join, defUse.getBlock(phi));
+        assertFalse(defUse.hasUses(t(6)));
+        assertMatchesNewIndex();
+    }
+
+    @Test
+    void replaceAllUsesWith() {
+        defUse.replaceAllUsesWith(t(2), t(0));
+
+        assertFalse(defUse.hasUses(t(2)));
+        assertEquals(t(0), ((ConditionalBranch) entry.getTerminator()).getValue());
+        assertEquals(t(0), left.getCommands().get(0).getParameters().get(0));
+        assertMatchesNewIndex();
+
+        // Named locals are told apart by name, another object of the same name is the same local.
+        defUse.replaceAllUsesWith(new VariableValue("v", Type.INT_32), p);
+        assertFalse(defUse.hasUses(v));
+        assertMatchesNewIndex();
+
+        defUse.replaceAllUsesWith(t(5), new IntValue(7));
+        assertFalse(defUse.hasUses(t(5)));
+        assertEquals(7, ((IntValue) ((Return) join.getTerminator()).getValue()).getValue());
+        assertMatchesNewIndex();
+    }
+
+    @Test
+    void eraseCommandsOnlyUsedAmongThemselves() {
+        defUse.replaceAllUsesWith(t(5), new IntValue(7));
+        defUse.erase(List.of(phi, left.getCommands().get(0), right.getCommands().get(0)));
+
+        assertTrue(join.getCommands().isEmpty());
+        assertTrue(left.getCommands().isEmpty());
+        assertTrue(right.getCommands().isEmpty());
+        assertNull(defUse.getDefinition(t(3)));
+        assertEquals(List.of("entry terminator"), uses(defUse, t(2)));
+        assertMatchesNewIndex();
+    }
+
+    @Test
+    void eraseOfAUsedCommandFails() {
+        Command add = entry.getCommands().get(0);
+        assertThrows(IllegalStateException.class, () -> defUse.erase(add));
+        assertThrows(IllegalStateException.class, () -> defUse.erase(List.of(add)));
+    }
+
+    @Test
+    void eraseOfOneCommand() {
+        Command sub = right.getCommands().get(0);
+        defUse.removeIncoming(phi, right);
+        defUse.erase(sub);
+
+        assertTrue(right.getCommands().isEmpty());
+        assertMatchesNewIndex();
+    }
+
+    @Test
+    void insert() {
+        Command add = new Command(t(6), Operation.ADD, List.of(t(0), p));
+        defUse.insert(entry, 1, add);
+
+        assertEquals(add, defUse.getDefinition(t(6)));
+        assertEquals(entry, defUse.getBlock(add));
+        assertMatchesNewIndex();
+
+        defUse.replaceAllUsesWith(t(1), t(6));
+        assertMatchesNewIndex();
+    }
+
+    @Test
+    void addAndRemoveIncoming() {
+        defUse.removeIncoming(phi, right);
+        assertEquals(List.of(left), phi.getBlocks());
+        assertFalse(defUse.hasUses(t(4)));
+        assertMatchesNewIndex();
+
+        defUse.addIncoming(phi, t(2), right);
+        assertEquals(List.of(t(3), t(2)), phi.getParameters());
+        assertEquals(List.of(left, right), phi.getBlocks());
+        assertMatchesNewIndex();
+
+        defUse.removeIncoming(phi, left);
+        assertEquals(List.of(t(2)), phi.getParameters());
+        assertMatchesNewIndex();
+    }
+
+    @Test
+    void setTerminator() {
+        defUse.setTerminator(entry, new Branch(left));
+        assertEquals(List.of("left 0 0", "right 0 0"), uses(defUse, t(2)));
+        assertMatchesNewIndex();
+
+        defUse.setTerminator(join, new Return(t(0)));
+        assertFalse(defUse.hasUses(t(5)));
+        assertMatchesNewIndex();
+
+        defUse.setTerminator(left, new ConditionalBranch(t(3), join, right));
+        assertEquals(List.of("join 0 0", "left terminator"), uses(defUse, t(3)));
+        assertMatchesNewIndex();
+    }
+
+    private LocalVariableValue t(int index) {
+        return temporaries.get(index);
+    }
+
+    private void assertMatchesNewIndex() {
+        assertEquals(describe(new DefUse(function)), describe(defUse));
+    }
+
+    // Definitions and uses of every value the test works with, by the place of the commands.
+    private Map<String, String> describe(DefUse index) {
+        List<Value> values = new ArrayList<>(temporaries);
+        values.add(p);
+        values.add(v);
+
+        Map<String, String> description = new TreeMap<>();
+        for (Value value : values) {
+            Command definition = index.getDefinition(value);
+            description.put(value.toLLVM(), (definition == null ? "undefined" : place(index, definition))
+                    + " used at " + uses(index, value));
+        }
+        return description;
+    }
+
+    private List<String> uses(DefUse index, Value value) {
+        return index.getUses(value).stream()
+                .peek(use -> assertEquals(value.toLLVM(), use.get().toLLVM()))
+                .map(use -> use.getCommand() == null
+                        ? label(use.getBlock()) + " terminator"
+                        : place(index, use.getCommand()) + " "
+                        + (use.getIndex() == DefUse.Use.RESULT ? "result" : use.getIndex()))
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private String place(DefUse index, Command command) {
+        BasicBlock block = index.getBlock(command);
+        int position = 0;
+        while (block.getCommands().get(position) != command) {
+            position++;
+        }
+        return label(block) + " " + position;
+    }
+
+    // Block names are numbered by the session, the test names them as above.
+    private String label(BasicBlock block) {
+        return block == entry ? "entry" : block == left ? "left" : block == right ? "right" : "join";
+    }
+}
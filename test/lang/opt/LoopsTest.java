@@ -0,0 +1,244 @@
+package lang.opt;
+
+import lang.CompilerSession;
+import lang.ir.BasicBlock;
+import lang.ir.Branch;
+import lang.ir.Command;
+import lang.ir.ConditionalBranch;
+import lang.ir.Function;
+import lang.ir.IntValue;
+import lang.ir.Operation;
+import lang.ir.Return;
+import lang.ir.Type;
+import lang.ir.Value;
+import lang.ir.VariableValue;
+import lang.stats.Stats;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// A loop entered from two blocks with a loop inside it:
+//
+//     entry:      br c, a, b
+//     a:          br header
+//     b:          br header
+//     header:     x = phi [1, a], [2, b], [y, latch]
+//                 z = phi [0, a], [0, b], [x, latch]
+//                 h = lt x, n
+//                 br h, body, exit
+//     body:       br inner
+//     inner:      br m, innerBody, latch
+//     innerBody:  br inner
+//     latch:      y = add x, 1
+//                 br header
+//     exit:       return x
+class LoopsTest {
+
+    private final VariableValue c = local("c");
+    private final VariableValue n = local("n");
+    private final VariableValue m = local("m");
+    private final VariableValue x = local("x");
+    private final VariableValue y = local("y");
+    private final VariableValue z = local("z");
+    private final VariableValue h = local("h");
+
+    private Function function;
+    private BasicBlock entry;
+    private BasicBlock a;
+    private BasicBlock b;
+    private BasicBlock header;
+    private BasicBlock body;
+    private BasicBlock inner;
+    private BasicBlock innerBody;
+    private BasicBlock latch;
+    private BasicBlock exit;
+
+    @BeforeEach
+    void buildFunction() {
+        function = new Function("f", new CompilerSession());
+        function.setParameterTypes(List.of());
+        entry = function.appendBlock("entry");
+        a = function.appendBlock("a");
+        b = function.appendBlock("b");
+        header = function.appendBlock("header");
+        body = function.appendBlock("body");
+        inner = function.appendBlock("inner");
+        innerBody = function.appendBlock("innerBody");
+        latch = function.appendBlock("latch");
+        exit = function.appendBlock("exit");
+
+        entry.setTerminator(new ConditionalBranch(c, a, b));
+        a.setTerminator(new Branch(header));
+        b.setTerminator(new Branch(header));
+
+        header.addCommand(new Command(x, Operation.PHI,
+                List.of(new IntValue(1), new IntValue(2), y), List.of(a, b, latch)));
+        header.addCommand(new Command(z, Operation.PHI,
+                List.of(new IntValue(0), new IntValue(0), x), List.of(a, b, latch)));
+        header.addCommand(new Command(h, Operation.LT, List.of(x, n)));
+        header.setTerminator(new ConditionalBranch(h, body, exit));
+
+        body.setTerminator(new Branch(inner));
+        inner.setTerminator(new ConditionalBranch(m, innerBody, latch));
+        innerBody.setTerminator(new Branch(inner));
+
+        latch.addCommand(new Command(y, Operation.ADD, List.of(x, new IntValue(1))));
+        latch.setTerminator(new Branch(header));
+
+        exit.setTerminator(new Return(x));
+        function.updateEdges();
+    }
+
+    @Test
+    void dominatorsAndFrontiers() {
+        Dominators dominators = new Dominators(new Cfg(function));
+
+        assertNull(dominators.getImmediateDominator(entry));
+        assertSame(entry, dominators.getImmediateDominator(a));
+        assertSame(entry, dominators.getImmediateDominator(b));
+        assertSame(entry, dominators.getImmediateDominator(header));
+        assertSame(header, dominators.getImmediateDominator(body));
+        assertSame(body, dominators.getImmediateDominator(inner));
+        assertSame(inner, dominators.getImmediateDominator(innerBody));
+        assertSame(inner, dominators.getImmediateDominator(latch));
+        assertSame(header, dominators.getImmediateDominator(exit));
+
+        assertEquals(Set.of(), dominators.getFrontier(entry));
+        assertEquals(Set.of(header), dominators.getFrontier(a));
+        assertEquals(Set.of(header), dominators.getFrontier(b));
+        assertEquals(Set.of(header), dominators.getFrontier(header));
+        assertEquals(Set.of(header), dominators.getFrontier(body));
+        assertEquals(Set.of(inner, header), dominators.getFrontier(inner));
+        assertEquals(Set.of(inner), dominators.getFrontier(innerBody));
+        assertEquals(Set.of(header), dominators.getFrontier(latch));
+        assertEquals(Set.of(), dominators.getFrontier(exit));
+
+        assertTrue(dominators.dominates(header, latch));
+        assertTrue(dominators.dominates(latch, latch));
+        assertFalse(dominators.dominates(a, header));
+    }
+
+    @Test
+    void loopNest() {
+        Cfg cfg = new Cfg(function);
+        Loops loops = new Loops(cfg, new Dominators(cfg));
+
+        assertEquals(2, loops.getLoops().size());
+        Loops.Loop outer = loops.getLoops().get(0);
+        Loops.Loop nested = loops.getLoops().get(1);
+
+        assertSame(header, outer.getHeader());
+        assertEquals(List.of(latch), outer.getLatches());
+        assertEquals(Set.of(header, body, inner, innerBody, latch), outer.getBlocks());
+        assertEquals(Set.of(exit), loops.getExits(outer));
+        assertEquals(List.of(a, b), loops.getEnteringBlocks(outer));
+        assertNull(loops.getPreheader(outer));
+        assertNull(outer.getParent());
+        assertEquals(List.of(nested), outer.getChildren());
+        assertEquals(List.of(outer), loops.getTopLevelLoops());
+
+        assertSame(inner, nested.getHeader());
+        assertEquals(List.of(innerBody), nested.getLatches());
+        assertEquals(Set.of(inner, innerBody), nested.getBlocks());
+        assertEquals(Set.of(latch), loops.getExits(nested));
+        assertSame(body, loops.getPreheader(nested));
+        assertSame(outer, nested.getParent());
+
+        assertEquals(0, loops.getDepth(entry));
+        assertEquals(1, loops.getDepth(header));
+        assertEquals(1, loops.getDepth(latch));
+        assertEquals(2, loops.getDepth(innerBody));
+        assertEquals(0, loops.getDepth(exit));
+        assertSame(nested, loops.getLoopFor(inner));
+        assertNull(loops.getLoopFor(a));
+    }
+
+    // A phi defines its result on entry to its block and reads its parameters at the end of the
+    // block they come from.
+    @Test
+    void liveValues() {
+        Liveness liveness = new Liveness(function, new Cfg(function));
+
+        assertEquals(names(c, n, m), names(liveness.getLiveIn(entry)));
+        assertEquals(names(n, m), names(liveness.getLiveOut(entry)));
+        assertEquals(names(n, m), names(liveness.getLiveOut(a)));
+        assertEquals(names(n, m), names(liveness.getLiveOut(b)));
+
+        assertEquals(names(x, z, n, m), names(liveness.getLiveIn(header)));
+        assertEquals(names(x, n, m), names(liveness.getLiveOut(header)));
+        assertEquals(names(x, n, m), names(liveness.getLiveIn(inner)));
+        assertEquals(names(x, n, m), names(liveness.getLiveOut(innerBody)));
+
+        assertEquals(names(x, n, m), names(liveness.getLiveIn(latch)));
+        assertEquals(names(x, y, n, m), names(liveness.getLiveOut(latch)));
+
+        assertEquals(names(x), names(liveness.getLiveIn(exit)));
+        assertEquals(names(), names(liveness.getLiveOut(exit)));
+
+        assertTrue(liveness.isLiveOut(y, latch));
+        assertFalse(liveness.isLiveIn(y, header));
+        assertFalse(liveness.isLiveOut(x, a));
+    }
+
+    // The loop entered from two blocks gets a preheader. The values the phis of the header take
+    // from outside come from it, merged by a phi of its own where they differ.
+    @Test
+    void loopSimplifyMergesEntriesInThePreheader() {
+        AnalysisManager analyses = new AnalysisManager(new Stats(false));
+        assertEquals(Pass.Change.BLOCKS, new LoopSimplify().run(function, analyses));
+        analyses.invalidate(function, Pass.Change.BLOCKS);
+
+        Cfg cfg = analyses.get(Cfg.ANALYSIS, function);
+        Loops loops = analyses.get(Loops.ANALYSIS, function);
+        Loops.Loop outer = loops.getLoops().get(0);
+        BasicBlock preheader = loops.getPreheader(outer);
+
+        assertSame(header, outer.getHeader());
+        assertEquals(List.of(preheader), loops.getEnteringBlocks(outer));
+        assertEquals(List.of(preheader), cfg.getSuccessors(a));
+        assertEquals(List.of(preheader), cfg.getSuccessors(b));
+        assertEquals(List.of(a, b), cfg.getPredecessors(preheader));
+
+        Command merge = preheader.getCommands().get(0);
+        assertEquals(1, preheader.getCommands().size());
+        assertEquals(Operation.PHI, merge.getOperation());
+        assertEquals(List.of(1, 2), merge.getParameters().stream()
+                .map(value -> ((IntValue) value).getValue())
+                .collect(Collectors.toList()));
+        assertEquals(List.of(a, b), merge.getBlocks());
+
+        Command xPhi = header.getCommands().get(0);
+        assertEquals(List.of(y, merge.getResult()), xPhi.getParameters());
+        assertEquals(List.of(latch, preheader), xPhi.getBlocks());
+
+        // Both entries give 0, no phi is needed for it.
+        Command zPhi = header.getCommands().get(1);
+        assertEquals(List.of(latch, preheader), zPhi.getBlocks());
+        assertEquals(x, zPhi.getParameters().get(0));
+        assertEquals(0, ((IntValue) zPhi.getParameters().get(1)).getValue());
+
+        assertSame(body, loops.getPreheader(loops.getLoops().get(1)));
+        assertEquals(Pass.Change.NONE, new LoopSimplify().run(function, analyses));
+    }
+
+    private static VariableValue local(String name) {
+        return new VariableValue(name, Type.INT_32);
+    }
+
+    private static Set<String> names(Value... values) {
+        return names(List.of(values));
+    }
+
+    private static Set<String> names(List<Value> values) {
+        return values.stream().map(Value::toLLVM).collect(Collectors.toSet());
+    }
+}
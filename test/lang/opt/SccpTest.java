@@ -0,0 +1,170 @@
+package lang.opt;
+
+import lang.CompilerSession;
+import lang.ir.BasicBlock;
+import lang.ir.BoolValue;
+import lang.ir.Branch;
+import lang.ir.Command;
+import lang.ir.ConditionalBranch;
+import lang.ir.Function;
+import lang.ir.GlobalVariableValue;
+import lang.ir.IntValue;
+import lang.ir.LocalVariableValue;
+import lang.ir.LongValue;
+import lang.ir.Operation;
+import lang.ir.Return;
+import lang.ir.Type;
+import lang.ir.Value;
+import lang.ir.VariableValue;
+import lang.stats.Stats;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Constants are propagated through commands and phis, branches on them become jumps and the blocks
+// they never reach go away.
+class SccpTest {
+
+    private final VariableValue p = new VariableValue("p", Type.INT_32);
+    private final List<LocalVariableValue> temporaries = new ArrayList<>();
+
+    private Function function;
+    private BasicBlock entry;
+
+    @BeforeEach
+    void buildFunction() {
+        for (int i = 0; i < 4; i++) {
+            temporaries.add(new LocalVariableValue(i, Type.INT_32));
+        }
+
+        function = new Function("f", new CompilerSession());
+        function.setParameterTypes(List.of());
+        function.setResultType(Type.INT_32);
+        entry = function.appendBlock("entry");
+    }
+
+    //     entry:  %0 = add 1, 2
+    //             %1 = mul %0, -3
+    //             %2 = div %1, 2
+    //             return %2
+    @Test
+    void arithmeticOnConstantsFolds() {
+        entry.addCommand(new Command(t(0), Operation.ADD, List.of(new IntValue(1), new IntValue(2))));
+        entry.addCommand(new Command(t(1), Operation.MUL, List.of(t(0), new IntValue(-3))));
+        entry.addCommand(new Command(t(2), Operation.DIV, List.of(t(1), new IntValue(2))));
+        entry.setTerminator(new Return(t(2)));
+
+        assertEquals(Pass.Change.COMMANDS, run());
+        assertTrue(entry.getCommands().isEmpty());
+        assertEquals(-4, returned(entry));
+    }
+
+    //     entry:  br true, left, right
+    //     left:   br join
+    //     right:  br join
+    //     join:   %0 = phi [p, left], [2, right]
+    //             return %0
+    @Test
+    void branchOnTrueDropsTheOtherArm() {
+        BasicBlock left = function.appendBlock("left");
+        BasicBlock right = function.appendBlock("right");
+        BasicBlock join = function.appendBlock("join");
+
+        entry.setTerminator(new ConditionalBranch(new BoolValue(true), left, right));
+        left.setTerminator(new Branch(join));
+        right.setTerminator(new Branch(join));
+        Command phi = new Command(t(0), Operation.PHI, List.of(p, new IntValue(2)), List.of(left, right));
+        join.addCommand(phi);
+        join.setTerminator(new Return(t(0)));
+        function.updateEdges();
+
+        assertEquals(Pass.Change.BLOCKS, run());
+        assertEquals(List.of(entry, left, join), function.getBlocks());
+        assertTrue(entry.getTerminator() instanceof Branch);
+        assertEquals(List.of(left), entry.getTerminator().getTargets());
+
+        assertEquals(List.of(phi), join.getCommands());
+        assertEquals(List.of(p), phi.getParameters());
+        assertEquals(List.of(left), phi.getBlocks());
+    }
+
+    // The dropped target is still reached through the other arm, only the edge from the branch
+    // leaves its phis.
+    //
+    //     entry:  br true, left, join
+    //     left:   br join
+    //     join:   %0 = phi [p, left], [2, entry]
+    //             return %0
+    @Test
+    void branchOnTrueDropsTheEdgeToAReachedBlock() {
+        BasicBlock left = function.appendBlock("left");
+        BasicBlock join = function.appendBlock("join");
+
+        entry.setTerminator(new ConditionalBranch(new BoolValue(true), left, join));
+        left.setTerminator(new Branch(join));
+        Command phi = new Command(t(0), Operation.PHI, List.of(p, new IntValue(2)), List.of(left, entry));
+        join.addCommand(phi);
+        join.setTerminator(new Return(t(0)));
+        function.updateEdges();
+
+        assertEquals(Pass.Change.BLOCKS, run());
+        assertEquals(List.of(entry, left, join), function.getBlocks());
+        assertEquals(List.of(p), phi.getParameters());
+        assertEquals(List.of(left), phi.getBlocks());
+        assertEquals(List.of(left), new Cfg(function).getPredecessors(join));
+    }
+
+    // Division by zero and the division that overflows are undefined, the program gets to run them.
+    @Test
+    void undefinedDivisionsAreNotFolded() {
+        LocalVariableValue wide = new LocalVariableValue(4, Type.INT_64);
+
+        entry.addCommand(new Command(t(0), Operation.DIV, List.of(p, new IntValue(0))));
+        entry.addCommand(new Command(t(1), Operation.MOD, List.of(new IntValue(7), new IntValue(0))));
+        entry.addCommand(new Command(t(2), Operation.DIV, List.of(new IntValue(Integer.MIN_VALUE), new IntValue(-1))));
+        entry.addCommand(new Command(t(3), Operation.MOD, List.of(new IntValue(Integer.MIN_VALUE), new IntValue(-1))));
+        entry.addCommand(new Command(wide, Operation.DIV, List.of(new LongValue(Long.MIN_VALUE), new LongValue(-1))));
+        entry.setTerminator(new Return(t(2)));
+
+        List<Command> commands = List.copyOf(entry.getCommands());
+        assertEquals(Pass.Change.NONE, run());
+        assertEquals(commands, entry.getCommands());
+        assertSame(t(2), ((Return) entry.getTerminator()).getValue());
+    }
+
+    // A global may be stored to by any function, what is loaded from it is never a constant. Globals
+    // no function stores to are not looked for either.
+    @Test
+    void loadsOfGlobalsAreNotFolded() {
+        GlobalVariableValue global = new GlobalVariableValue("g", Type.INT_32, new IntValue(5));
+
+        entry.addCommand(new Command(t(0), Operation.LOAD, List.of(global)));
+        entry.addCommand(new Command(t(1), Operation.ADD, List.of(t(0), new IntValue(1))));
+        entry.setTerminator(new Return(t(1)));
+
+        assertEquals(Pass.Change.NONE, run());
+        assertEquals(2, entry.getCommands().size());
+    }
+
+    private LocalVariableValue t(int index) {
+        return temporaries.get(index);
+    }
+
+    private Pass.Change run() {
+        function.updateEdges();
+        return new Sccp().run(function, new AnalysisManager(new Stats(false)));
+    }
+
+    private static int returned(BasicBlock block) {
+        Value value = ((Return) block.getTerminator()).getValue();
+        assertFalse(value instanceof LocalVariableValue, value.toString());
+        return ((IntValue) value).getValue();
+    }
+}
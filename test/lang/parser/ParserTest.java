@@ -0,0 +1,52 @@
+package lang.parser;
+
+import lang.ast.FileNode;
+import lang.lexer.Lexer;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+// Parentheses and ?: nest without recursion, and leave the trees of the grammar as they were.
+class ParserTest {
+
+    private static final int DEPTH = 50_000;
+
+    @Test
+    void deeplyNestedParentheses() {
+        parse("(".repeat(DEPTH) + "a" + ")".repeat(DEPTH));
+        parse("(1 + ".repeat(DEPTH) + "1" + ")".repeat(DEPTH));
+        parse("++(<int> (".repeat(DEPTH) + "a" + "))".repeat(DEPTH));
+    }
+
+    @Test
+    void deeplyNestedConditionals() {
+        parse("a ? b : ".repeat(DEPTH) + "c");
+        parse("a ? ".repeat(DEPTH) + "b" + " : c".repeat(DEPTH));
+    }
+
+    @Test
+    void parenthesesOnlyGroup() {
+        assertEquals(tree("a - b - c * d"), tree("((a - b)) - (c * (d))"));
+        assertEquals(tree("a - (b - c)"), tree("(a) - ((b) - c)"));
+        assertNotEquals(tree("a - b - c"), tree("a - (b - c)"));
+
+        assertEquals(tree("a || b && c == d < e + f * g"), tree("a || (b && (c == (d < (e + (f * g)))))"));
+        assertEquals(tree("a ? b : c ? d : e"), tree("a ? (b) : (c ? d : e)"));
+        assertEquals(tree("a ? b ? c : d : e"), tree("(a) ? (b ? c : d) : (e)"));
+
+        assertEquals(tree("++ -- x.y[1]++ * <int> <long> z"), tree("(++(--((x).y[(1)]++))) * (<int> (<long> (z)))"));
+        assertEquals(tree("f(a, b ? c : d).x"), tree("((f)((a), (b ? c : d))).x"));
+    }
+
+    private static String tree(String expression) {
+        return parse(expression).astDebug(0);
+    }
+
+    private static FileNode parse(String expression) {
+        String source = "() int main ->\n    return " + expression + "\n";
+        return new Parser(new Lexer(new StringReader(source)), "main", "main").parse();
+    }
+}